@@ -29,6 +29,15 @@ android {
         sourceCompatibility = JavaVersion.VERSION_11
         targetCompatibility = JavaVersion.VERSION_11
     }
+    sourceSets {
+        getByName("test") {
+            // Timing loops stay out of the unit tests unless asked for:
+            // ./gradlew testDebugUnitTest -Pbenchmark --tests '*Benchmark'
+            if (project.hasProperty("benchmark")) {
+                java.srcDir("src/benchmark/java")
+            }
+        }
+    }
 }
 
 dependencies {
@@ -38,6 +47,8 @@ dependencies {
     implementation(libs.constraintlayout)
     compileOnly(files("libs/api-82.jar"))
     testImplementation(libs.junit)
+    // android.jar only has throwing stubs for org.json
+    testImplementation(libs.json)
     androidTestImplementation(libs.ext.junit)
     androidTestImplementation(libs.espresso.core)
 }
@@ -0,0 +1,38 @@
+package com.killbus.smzdmenhancer;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Per-row cost of MallRegistry.lookup on Chinese mall names
+ * Run with ./gradlew testDebugUnitTest -Pbenchmark --tests '*Benchmark'
+ */
+public class MallRegistryBenchmark {
+
+    @Test
+    public void lookupOnChineseMallNames() {
+        String[] configured = { "京东", "天猫", "拼多多", "苏宁易购", "亚马逊中国", "唯品会" };
+        for (String mall : configured) {
+            MallRegistry.intern(mall);
+        }
+        // Mall fields as they arrive in rows, most of them not configured
+        String[] rows = {
+            "京东", "天猫超市", "拼多多", "淘宝", "京东国际", "苏宁易购", "抖音商城",
+            "唯品会", "网易严选", "小米有品", "亚马逊中国", "当当", "天猫", "考拉海购",
+        };
+
+        int hits = 0;
+        int iterations = 2_000_000;
+        long best = Long.MAX_VALUE;
+        for (int round = 0; round < 5; round++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                if (MallRegistry.lookup(rows[i % rows.length]) >= 0) hits++;
+            }
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        System.out.printf("MallRegistry.lookup: %.1f ns/row%n", (double) best / iterations);
+        assertTrue(hits > 0);
+    }
+}
@@ -0,0 +1,60 @@
+package com.killbus.smzdmenhancer;
+
+import com.killbus.smzdmenhancer.utils.SimHash;
+
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Per-row cost of hashing and offering titles, across window sizes
+ * Run with ./gradlew testDebugUnitTest -Pbenchmark --tests '*Benchmark'
+ */
+public class NearDuplicateIndexBenchmark {
+    private final int[] weights = new int[64];
+
+    @Test
+    public void offerCostIsFlatAcrossWindowSizes() {
+        int[] windows = { 2000, 10000, 20000 };
+        long[][] hashes = new long[windows.length][];
+        for (int w = 0; w < windows.length; w++) {
+            Random random = new Random(42);
+            List<String> deals = NearDuplicateIndexTest.deals(random, windows[w] / 5);
+            hashes[w] = new long[deals.size() * 5];
+            for (int i = 0; i < hashes[w].length; i++) {
+                hashes[w][i] = SimHash.hash(NearDuplicateIndexTest.decorate(deals.get(i / 5), random), weights);
+            }
+        }
+
+        // The first pass warms up the JIT, the second one is measured
+        double[] nsPerRow = new double[windows.length];
+        for (int pass = 0; pass < 2; pass++) {
+            for (int w = 0; w < windows.length; w++) {
+                nsPerRow[w] = offerAll(hashes[w]);
+            }
+        }
+        for (int w = 0; w < windows.length; w++) {
+            System.out.printf("NearDuplicateIndex.offer, window %d: %.0f ns/row%n", windows[w], nsPerRow[w]);
+        }
+        // Probes per offer are fixed; what is left is cache misses on the larger tables.
+        // Scanning every slot, as before, grew about tenfold over this range.
+        assertTrue("offer cost grows with the window", nsPerRow[2] < nsPerRow[0] * 4);
+    }
+
+    private static double offerAll(long[] hashes) {
+        long best = Long.MAX_VALUE;
+        for (int round = 0; round < 5; round++) {
+            NearDuplicateIndex index = new NearDuplicateIndex(hashes.length, () -> 0);
+            long page = index.beginPage();
+            long start = System.nanoTime();
+            for (int i = 0; i < hashes.length; i++) {
+                index.offer(hashes[i], i + 1, 0, page, -1);
+            }
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        return (double) best / hashes.length;
+    }
+}
@@ -0,0 +1,30 @@
+package com.killbus.smzdmenhancer;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Per-row cost of ArticleRow.extractPriceFields on Chinese titles
+ * Run with ./gradlew testDebugUnitTest -Pbenchmark --tests '*Benchmark'
+ */
+public class PriceExtractorBenchmark {
+
+    @Test
+    public void extractChineseTitles() {
+        MallRegistry.intern("京东");
+        ArticleRow row = new ArticleRow();
+        long checksum = 0;
+        int iterations = 1_000_000;
+        long best = Long.MAX_VALUE;
+        for (int round = 0; round < 5; round++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                checksum += PriceExtractorTest.fill(row, PriceExtractorTest.ROWS[i % PriceExtractorTest.ROWS.length]);
+            }
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        System.out.printf("ArticleRow.extractPriceFields: %.1f ns/row%n", (double) best / iterations);
+        assertTrue(checksum != 0);
+    }
+}
@@ -0,0 +1,53 @@
+package com.killbus.smzdmenhancer;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Per-row cost of a compiled RULE_EXPRESSION against the same check written in Java
+ * Run with ./gradlew testDebugUnitTest -Pbenchmark --tests '*Benchmark'
+ */
+public class RuleExpressionBenchmark {
+    private static final String SOURCE = "channel in {1, 80} && comments >= 3 && wilson(worthy, unworthy) > 0.6";
+
+    @Test
+    public void compiledAgainstHandWritten() {
+        Random random = new Random(20240601);
+        ArticleRow[] sample = new ArticleRow[1024];
+        for (int i = 0; i < sample.length; i++) {
+            ArticleRow row = new ArticleRow();
+            row.reset();
+            row.commentCount = random.nextInt(40) - 5;
+            row.worthy = random.nextInt(100);
+            row.unworthy = random.nextInt(30);
+            row.channelId = new int[] { 0, 1, 3, 5, 80 }[random.nextInt(5)];
+            sample[i] = row;
+        }
+        RuleExpression expression = RuleExpression.compile(SOURCE);
+
+        int iterations = 2_000_000;
+        long compiledBest = Long.MAX_VALUE;
+        long handBest = Long.MAX_VALUE;
+        int compiledCount = 0;
+        int handCount = 0;
+        for (int round = 0; round < 5; round++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                if (expression.matches(sample[i & 1023])) compiledCount++;
+            }
+            compiledBest = Math.min(compiledBest, System.nanoTime() - start);
+
+            start = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                if (RuleExpressionTest.handWritten(sample[i & 1023])) handCount++;
+            }
+            handBest = Math.min(handBest, System.nanoTime() - start);
+        }
+        System.out.printf("%s: %d instructions, %.1f ns/row, hand-written: %.1f ns/row%n", SOURCE,
+            expression.size(), (double) compiledBest / iterations, (double) handBest / iterations);
+        assertEquals(handCount, compiledCount);
+    }
+}
@@ -0,0 +1,135 @@
+package com.killbus.smzdmenhancer;
+
+import com.killbus.smzdmenhancer.utils.Clock;
+import com.killbus.smzdmenhancer.utils.Metrics;
+
+/**
+ * Self-tuning switch between full filtering, pre-scan only and pass-through
+ *
+ * Tracks an EWMA of filter latency, payload size and drop ratio:
+ * - FULL steps down to PRESCAN when pages keep dropping nothing or latency is over budget
+ * - PRESCAN steps down to PASSTHROUGH when even the cheap path is over budget
+ * - PASSTHROUGH probes PRESCAN again after a recovery period
+ * - PRESCAN returns to FULL once latency is back under budget and rows are being dropped again
+ */
+public class AdaptiveFilterController {
+
+    /**
+     * Filtering modes, cheapest last
+     */
+    public enum Mode {
+        FULL,        // Parse and filter every response
+        PRESCAN,     // Parse only when the pre-scan finds a candidate row
+        PASSTHROUGH  // Leave responses untouched
+    }
+
+    private final Clock clock;
+
+    private Mode mode = Mode.FULL;
+    private long modeSinceNs;
+    private double latencyEwmaNs = -1;
+    private double payloadEwmaChars = -1;
+    private double dropRatioEwma = -1;
+    private int zeroDropStreak;
+
+    public AdaptiveFilterController() {
+        this(Clock.SYSTEM);
+    }
+
+    public AdaptiveFilterController(Clock clock) {
+        this.clock = clock;
+        this.modeSinceNs = clock.nanoTime();
+        publish();
+    }
+
+    /**
+     * Mode to use for the next response
+     * Also performs the time-based ramp-up out of PASSTHROUGH
+     */
+    public synchronized Mode currentMode() {
+        if (!Config.ADAPTIVE_FILTER_ENABLED) {
+            return Mode.FULL;
+        }
+        if (mode == Mode.PASSTHROUGH
+                && clock.nanoTime() - modeSinceNs >= Config.ADAPTIVE_RECOVERY_MS * 1_000_000L) {
+            switchTo(Mode.PRESCAN);
+        }
+        return mode;
+    }
+
+    /**
+     * Record the outcome of one response
+     *
+     * @param ranIn Mode the response was handled in
+     * @param latencyNs Time spent in the module for this response
+     * @param payloadChars Length of the raw response
+     * @param rows Number of rows in the response
+     * @param dropped Number of rows dropped
+     */
+    public synchronized void record(Mode ranIn, long latencyNs, int payloadChars, int rows, int dropped) {
+        if (!Config.ADAPTIVE_FILTER_ENABLED || ranIn != mode) {
+            return;
+        }
+
+        double alpha = Config.ADAPTIVE_EWMA_ALPHA;
+        latencyEwmaNs = ewma(latencyEwmaNs, latencyNs, alpha);
+        payloadEwmaChars = ewma(payloadEwmaChars, payloadChars, alpha);
+        if (rows > 0) {
+            dropRatioEwma = ewma(dropRatioEwma, (double) dropped / rows, alpha);
+            zeroDropStreak = dropped == 0 ? zeroDropStreak + 1 : 0;
+        }
+
+        boolean overBudget = latencyEwmaNs > budgetNs();
+        switch (mode) {
+            case FULL:
+                if (overBudget || zeroDropStreak >= Config.ADAPTIVE_ZERO_DROP_PAGES) {
+                    switchTo(Mode.PRESCAN);
+                }
+                break;
+
+            case PRESCAN:
+                if (overBudget) {
+                    switchTo(Mode.PASSTHROUGH);
+                } else if (latencyEwmaNs < budgetNs() / 2
+                        && dropRatioEwma >= Config.ADAPTIVE_FULL_DROP_RATIO) {
+                    switchTo(Mode.FULL);
+                }
+                break;
+
+            case PASSTHROUGH:
+            default:
+                break;
+        }
+        publish();
+    }
+
+    /**
+     * Latency budget for a page of the average observed size
+     */
+    double budgetNs() {
+        double kb = Math.max(0, payloadEwmaChars) / 1024.0;
+        return Config.ADAPTIVE_LATENCY_BUDGET_MS * 1_000_000.0
+            + kb * Config.ADAPTIVE_LATENCY_BUDGET_US_PER_KB * 1_000.0;
+    }
+
+    private void switchTo(Mode next) {
+        mode = next;
+        modeSinceNs = clock.nanoTime();
+        // Each mode has a different cost profile, so start its latency average fresh
+        latencyEwmaNs = -1;
+        zeroDropStreak = 0;
+        Metrics.increment("adaptive.transitions");
+        publish();
+    }
+
+    private void publish() {
+        Metrics.gauge("adaptive.mode", mode.name());
+        Metrics.gauge("adaptive.latency_ewma_us", (long) (Math.max(0, latencyEwmaNs) / 1000));
+        Metrics.gauge("adaptive.payload_ewma_chars", (long) Math.max(0, payloadEwmaChars));
+        Metrics.gauge("adaptive.drop_ratio_ewma", Math.max(0, dropRatioEwma));
+    }
+
+    private static double ewma(double current, double sample, double alpha) {
+        return current < 0 ? sample : current + alpha * (sample - current);
+    }
+}
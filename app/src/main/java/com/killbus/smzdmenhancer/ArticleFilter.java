@@ -1,6 +1,7 @@
 package com.killbus.smzdmenhancer;
 
 import com.killbus.smzdmenhancer.utils.Logger;
+import com.killbus.smzdmenhancer.utils.Tracer;
 
 import org.json.JSONArray;
 import org.json.JSONObject;
@@ -22,8 +23,22 @@ public class ArticleFilter {
      * @return The filtered JSON string, or null if no changes were made.
      */
     public static String filterJsonResponse(String jsonStr) {
+        return filterJsonResponse(jsonStr, new FilterStats());
+    }
+
+    /**
+     * Filter a JSON response string and report row counts.
+     *
+     * @param jsonStr The raw JSON response string.
+     * @param stats Receives the number of rows seen and dropped.
+     * @return The filtered JSON string, or null if no changes were made.
+     */
+    public static String filterJsonResponse(String jsonStr, FilterStats stats) {
+        stats.reset();
         try {
+            long span = Tracer.begin();
             JSONObject root = new JSONObject(jsonStr);
+            Tracer.end("filter.parse", span);
 
             if (!root.has("data")) return null;
             JSONObject data = root.getJSONObject("data");
@@ -33,51 +48,70 @@ public class ArticleFilter {
             JSONArray filteredRows = new JSONArray();
             int totalDropped = 0;
 
+            RuleSnapshot rules = RuleSnapshot.current();
+            boolean withPriceFields = rules.usesPriceFields();
+            ArticleRow row = new ArticleRow();
+
+            // Warm-up payloads must not end up in the shared duplicate window
+            NearDuplicateIndex dedup = rules.dedup() && !stats.quiet ? NearDuplicateIndex.get() : null;
+            long page = dedup != null ? dedup.beginPage() : 0;
+            int[] weights = dedup != null ? new int[64] : null;
+            JSONObject[] keptRows = new JSONObject[rows.length()];
+
+            span = Tracer.begin();
             for (int i = 0; i < rows.length(); i++) {
                 JSONObject article = rows.getJSONObject(i);
-                boolean shouldFilter = false;
-                String filterReason = "";
+                row.readJson(article, withPriceFields, dedup != null);
+                String filterReason = rules.check(row);
 
-                // Check comment count
-                int commentCount = 0;
-                if (article.has("article_comment")) {
-                    String commentStr = article.optString("article_comment", "0");
-                    try {
-                        commentCount = Integer.parseInt(commentStr);
-                    } catch (NumberFormatException e) {
-                        // Ignore
+                if (filterReason == null && dedup != null) {
+                    int verdict = dedup.offer(row, page, i, weights);
+                    if (verdict == NearDuplicateIndex.DROP) {
+                        filterReason = "duplicate";
+                    } else if (verdict >= 0 && keptRows[verdict] != null) {
+                        // A better copy of an earlier row on this page
+                        logDropped(keptRows[verdict], "duplicate", stats);
+                        keptRows[verdict] = null;
+                        totalDropped++;
                     }
                 }
 
-                if (commentCount < Config.COMMENT_THRESHOLD) {
-                    shouldFilter = true;
-                    filterReason = "comments:" + commentCount;
-                }
-
-                if (shouldFilter) {
-                    String title = article.optString("article_title", "Unknown");
-                    String id = article.optString("article_id", "N/A");
-                    Logger.logDroppedArticle(title, id, "JSONFilter[" + filterReason + "]");
+                if (filterReason != null) {
+                    logDropped(article, filterReason, stats);
                     totalDropped++;
                 } else {
-                    filteredRows.put(article);
+                    keptRows[i] = article;
                 }
             }
+            for (JSONObject article : keptRows) {
+                if (article != null) filteredRows.put(article);
+            }
+            Tracer.end("filter.rules", span);
+
+            stats.rows = rows.length();
+            stats.dropped = totalDropped;
 
             if (totalDropped > 0) {
-                Logger.info(String.format("Filtered JSON: %d dropped, %d kept",
-                    totalDropped, filteredRows.length()));
+                if (!stats.quiet) {
+                    Logger.info(String.format("Filtered JSON: %d dropped, %d kept",
+                        totalDropped, filteredRows.length()));
+                }
 
                 // If all articles were dropped, add the last one back to prevent breaking the UI
                 if (filteredRows.length() == 0 && rows.length() > 0) {
                     JSONObject lastArticle = rows.getJSONObject(rows.length() - 1);
                     filteredRows.put(lastArticle);
-                    String title = lastArticle.optString("article_title", "Unknown");
-                    Logger.info("All articles dropped, keeping the last one to prevent UI issues: " + title);
+                    if (!stats.quiet) {
+                        String title = lastArticle.optString("article_title", "Unknown");
+                        Logger.info("All articles dropped, keeping the last one to prevent UI issues: " + title);
+                    }
                 }
 
                 data.put("rows", filteredRows);
-                return root.toString();
+                span = Tracer.begin();
+                String result = root.toString();
+                Tracer.end("filter.serialize", span);
+                return result;
             }
 
             return null; // No changes
@@ -87,6 +121,15 @@ public class ArticleFilter {
         }
     }
     
+    private static void logDropped(JSONObject article, String reason, FilterStats stats) {
+        if (stats.quiet) return;
+        long span = Tracer.begin();
+        String title = article.optString("article_title", "Unknown");
+        String id = article.optString("article_id", "N/A");
+        Logger.logDroppedArticle(title, id, "JSONFilter[" + reason + "]");
+        Tracer.end("filter.log", span);
+    }
+
     /**
      * Filter a list of FollowItemBean objects based on comment count
      * This method modifies the list in place
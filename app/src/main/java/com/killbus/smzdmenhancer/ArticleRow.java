@@ -0,0 +1,109 @@
+package com.killbus.smzdmenhancer;
+
+import org.json.JSONObject;
+
+/**
+ * Fields of one feed row that the rules look at
+ * Reused across rows to avoid allocation on the filter path
+ */
+public class ArticleRow {
+    public int commentCount;
+    public int worthy;
+    public int unworthy;
+    public int channelId;
+    public long articleId;
+    public String title;
+    public String price;
+    public String mall;
+
+    /**
+     * Extracted by PriceExtractor, -1 when not present
+     */
+    public int priceCents;
+
+    /**
+     * Discount in tenths of 折 (e.g. 55 for 5.5折), -1 when not present
+     */
+    public int discountTenths;
+
+    /**
+     * Title or price mentions 历史低价/史低
+     */
+    public boolean historicalLow;
+
+    /**
+     * Interned mall ID from MallRegistry, -1 when unknown
+     */
+    public int mallId;
+
+    /**
+     * Register frame of the RuleExpression that last evaluated this row, kept across reset()
+     */
+    RuleExpression frameOwner;
+    int[] ints;
+    double[] doubles;
+
+    /**
+     * Clear all fields before reading the next row
+     */
+    public void reset() {
+        commentCount = 0;
+        worthy = 0;
+        unworthy = 0;
+        channelId = 0;
+        articleId = 0;
+        title = null;
+        price = null;
+        mall = null;
+        priceCents = -1;
+        discountTenths = -1;
+        historicalLow = false;
+        mallId = -1;
+    }
+
+    /**
+     * Read a row from the /home/list JSON
+     *
+     * @param article The row object.
+     * @param withPriceFields Also read title, price and mall and extract their numbers.
+     * @param withTitle Also read the title, for duplicate detection.
+     */
+    public void readJson(JSONObject article, boolean withPriceFields, boolean withTitle) {
+        reset();
+        if (article.has("article_comment")) {
+            String comment = article.optString("article_comment", "0");
+            commentCount = JsonNumbers.parseIntOrZero(comment, 0, comment.length());
+        }
+        articleId = SeenArticleStore.parseId(article.optString("article_id", ""));
+        worthy = article.optInt("article_worthy", 0);
+        unworthy = article.optInt("article_unworthy", 0);
+        channelId = article.optInt("article_channel_id", 0);
+
+        if (withTitle) {
+            title = article.optString("article_title", "");
+        }
+        if (withPriceFields) {
+            title = article.optString("article_title", "");
+            price = article.optString("article_price", "");
+            mall = article.optString("article_mall", "");
+            extractPriceFields();
+        }
+    }
+
+    /**
+     * Fill the extracted fields from title, price and mall
+     */
+    public void extractPriceFields() {
+        // The dedicated price field wins over numbers found in the title
+        if (price != null) PriceExtractor.scan(price, this);
+        if (title != null) PriceExtractor.scan(title, this);
+        mallId = MallRegistry.lookup(mall);
+    }
+
+    /**
+     * Ranking used to pick the best row among near-duplicates
+     */
+    public int score() {
+        return 2 * (worthy - unworthy) + commentCount;
+    }
+}
@@ -58,7 +58,219 @@ public class Config {
      * Useful for seeing the filter in action
      */
     public static boolean SHOW_FILTER_TOAST = true;
-    
+
+    // ========== Warm-up Configuration ==========
+
+    /**
+     * Exercise the filter on a synthetic payload in the background at hook bootstrap
+     * Removes the class loading and JIT cost from the first real response
+     */
+    public static boolean WARMUP_ENABLED = true;
+
+    /**
+     * Number of filter passes over the synthetic payload
+     */
+    public static int WARMUP_ITERATIONS = 5;
+
+    /**
+     * Number of rows in the synthetic payload
+     */
+    public static int WARMUP_ROWS = 20;
+
+    // ========== Tracing Configuration ==========
+
+    /**
+     * Record per-stage spans of the response hook into an in-memory ring
+     * Can also be toggled at runtime with the trace broadcast (see TraceCommandReceiver)
+     */
+    public static volatile boolean TRACE_ENABLED = false;
+
+    /**
+     * Number of spans kept in the trace ring (rounded down to a power of two)
+     */
+    public static int TRACE_RING_SIZE = 4096;
+
+    // ========== Byte-level Filtering Configuration ==========
+
+    /**
+     * Filter /home/list as UTF-8 bytes in an OkHttp interceptor
+     * instead of the decoded String in the onSuccess callback
+     * Falls back to String filtering if OkHttp cannot be hooked
+     */
+    public static boolean BYTE_LEVEL_FILTER = false;
+
+    // ========== Response Cache Configuration ==========
+
+    /**
+     * Reuse the filter result when an identical response body is delivered again
+     */
+    public static boolean RESPONSE_MEMO_ENABLED = true;
+
+    /**
+     * Maximum characters of cached filter results (about 2 bytes each)
+     */
+    public static long RESPONSE_MEMO_MAX_CHARS = 2_000_000;
+
+    // ========== Memory Configuration ==========
+
+    /**
+     * Heap budget for the module's caches and indexes inside the app, in KB
+     * Over budget, the response cache is trimmed first, then the duplicate index,
+     * then pending seen-article IDs are compacted to disk
+     */
+    public static int MEMORY_BUDGET_KB = 6144;
+
+    // ========== Adaptive Filtering Configuration ==========
+
+    /**
+     * Let the filter degrade to pre-scan only or pass-through under load
+     * Set to false to always run the full filter
+     */
+    public static boolean ADAPTIVE_FILTER_ENABLED = true;
+
+    /**
+     * Fixed part of the per-response latency budget in milliseconds
+     */
+    public static int ADAPTIVE_LATENCY_BUDGET_MS = 10;
+
+    /**
+     * Additional latency budget per KB of response, in microseconds
+     * Larger pages are allowed proportionally more time
+     */
+    public static int ADAPTIVE_LATENCY_BUDGET_US_PER_KB = 200;
+
+    /**
+     * Smoothing factor for latency, payload size and drop ratio averages (0-1)
+     * Higher values react faster to recent responses
+     */
+    public static double ADAPTIVE_EWMA_ALPHA = 0.3;
+
+    /**
+     * Consecutive pages without any dropped row before switching to pre-scan only
+     */
+    public static int ADAPTIVE_ZERO_DROP_PAGES = 5;
+
+    /**
+     * Average drop ratio (0-1) at which pre-scan mode returns to full filtering
+     */
+    public static double ADAPTIVE_FULL_DROP_RATIO = 0.05;
+
+    /**
+     * Time spent in pass-through before probing the filter again
+     */
+    public static long ADAPTIVE_RECOVERY_MS = 30_000;
+
+    // ========== Seen Article Configuration ==========
+
+    /**
+     * Hide articles that were already opened
+     * Opened article IDs are persisted in the app's files directory
+     */
+    public static boolean HIDE_SEEN_ARTICLES = false;
+
+    /**
+     * Number of newly seen IDs kept in memory before the on-disk index is rebuilt
+     */
+    public static int SEEN_STORE_COMPACT_THRESHOLD = 512;
+
+    /**
+     * Fewest pending IDs for which a memory trim rebuilds the on-disk index early
+     * Below this, rewriting the whole index frees too little heap to be worth it
+     */
+    public static int SEEN_STORE_TRIM_MIN_PENDING = 64;
+
+    /**
+     * Intent extra keys that carry the article ID when a detail page is opened
+     */
+    public static final Set<String> SEEN_INTENT_EXTRA_KEYS = new HashSet<>(Arrays.asList(
+        "article_id",
+        "articleId"
+    ));
+
+    // ========== Price & Deal Quality Configuration ==========
+
+    /**
+     * Minimum discount in percent, read from "X折" in price or title
+     * Example: 30 keeps 7折 and below; rows without a discount are kept
+     * Set to 0 to disable this filter
+     */
+    public static int MIN_DISCOUNT_PERCENT = 0;
+
+    /**
+     * Only keep rows marked as 历史低价/史低
+     */
+    public static boolean HISTORICAL_LOW_ONLY = false;
+
+    /**
+     * Maximum price in yuan, read from "XX元" or "¥XX" in price or title
+     * Rows without a price are kept
+     * Set to 0 to disable this filter
+     */
+    public static int MAX_PRICE_YUAN = 0;
+
+    /**
+     * Mall filter mode, same semantics as ChannelFilterMode
+     */
+    public enum MallFilterMode {
+        DISABLED,   // No mall filtering
+        WHITELIST,  // Only allow specified malls
+        BLACKLIST   // Block specified malls
+    }
+
+    /**
+     * Current mall filter mode
+     */
+    public static MallFilterMode MALL_FILTER_MODE = MallFilterMode.DISABLED;
+
+    /**
+     * Mall whitelist, matched against article_mall (case-insensitive)
+     */
+    public static final Set<String> MALL_WHITELIST = new HashSet<>(Arrays.asList(
+        // Example: "京东", "天猫"
+    ));
+
+    /**
+     * Mall blacklist, matched against article_mall (case-insensitive)
+     */
+    public static final Set<String> MALL_BLACKLIST = new HashSet<>(Arrays.asList(
+        // Example: "拼多多"
+    ));
+
+    // ========== Rule Expression Configuration ==========
+
+    /**
+     * Extra condition every row must meet to be kept, empty to disable
+     * Fields: comments, worthy, unworthy, channel, price (yuan), discount (折), historical_low
+     * price and discount are -1 when the row has none
+     * Functions: wilson(positive, negative), min(a, b), max(a, b)
+     * Example: channel in {1, 80} && comments >= 3 && wilson(worthy, unworthy) > 0.6
+     */
+    public static String RULE_EXPRESSION = "";
+
+    // ========== Near-duplicate Configuration ==========
+
+    /**
+     * Collapse rows whose titles are near-duplicates of a recent row
+     * Only the row with the best worthy/comment score of each cluster is kept
+     */
+    public static boolean DEDUP_ENABLED = false;
+
+    /**
+     * Number of recent titles remembered for duplicate detection
+     */
+    public static int DEDUP_WINDOW_SIZE = 2000;
+
+    /**
+     * How long a title is remembered for duplicate detection
+     */
+    public static int DEDUP_WINDOW_MINUTES = 60;
+
+    /**
+     * Maximum SimHash bit difference for two titles to count as duplicates
+     * Values above 5 are not guaranteed to be found by the banded index
+     */
+    public static int DEDUP_MAX_HAMMING = 5;
+
     // ========== Channel Filtering Configuration ==========
     
     /**
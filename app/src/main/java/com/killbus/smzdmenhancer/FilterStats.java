@@ -0,0 +1,30 @@
+package com.killbus.smzdmenhancer;
+
+/**
+ * Per-response row counts reported by the filter
+ * Reused across calls to avoid allocation on the hook path
+ */
+public class FilterStats {
+    /**
+     * Number of rows seen in the response
+     */
+    public int rows;
+
+    /**
+     * Number of rows dropped by the filter
+     */
+    public int dropped;
+
+    /**
+     * Skip per-row logging, used when exercising the filter during warm-up
+     */
+    public boolean quiet;
+
+    /**
+     * Clear counts before a new response
+     */
+    public void reset() {
+        rows = 0;
+        dropped = 0;
+    }
+}
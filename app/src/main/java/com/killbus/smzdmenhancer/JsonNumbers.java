@@ -0,0 +1,93 @@
+package com.killbus.smzdmenhancer;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Number parsing shared by every filter path
+ * The String filter, the pre-scan and the byte filter read the same value from the same row
+ */
+public class JsonNumbers {
+    private static final int NOT_PLAIN = Integer.MIN_VALUE;
+
+    /**
+     * Integer.parseInt over s[start, end), or 0 where parseInt would throw
+     * This is how the String filter reads article_comment from its optString value.
+     */
+    public static int parseIntOrZero(CharSequence s, int start, int end) {
+        if (start >= end) return 0;
+        char first = s.charAt(start);
+        boolean negative = first == '-';
+        int i = negative || first == '+' ? start + 1 : start;
+        if (i == end) return 0;
+
+        // Accumulate negatively so Integer.MIN_VALUE parses, like Integer.parseInt
+        int limit = negative ? Integer.MIN_VALUE : -Integer.MAX_VALUE;
+        int value = 0;
+        for (; i < end; i++) {
+            int digit = Character.digit(s.charAt(i), 10);
+            if (digit < 0 || value < limit / 10) return 0;
+            value *= 10;
+            if (value < limit + digit) return 0;
+            value -= digit;
+        }
+        return negative ? value : -value;
+    }
+
+    /**
+     * JSONObject.optInt(key, 0) for a value written as json[start, end)
+     * Plain integers are read in place. Decimals, long values, escapes and other rare
+     * spellings go through org.json itself, so they come out as in the String filter.
+     */
+    public static int optInt(byte[] json, int start, int end) {
+        int value = plainInt(json, start, end);
+        if (value != NOT_PLAIN) return value;
+        JSONArray parsed = parse(json, start, end);
+        return parsed != null ? parsed.optInt(0, 0) : 0;
+    }
+
+    /**
+     * Integer.parseInt(optString(key, "0")) for a value written as json[start, end), 0 on failure
+     * This is how the String filter reads article_comment.
+     */
+    public static int optStringInt(byte[] json, int start, int end) {
+        int value = plainInt(json, start, end);
+        if (value != NOT_PLAIN) return value;
+        JSONArray parsed = parse(json, start, end);
+        if (parsed == null) return 0;
+        String text = parsed.optString(0, "0");
+        return parseIntOrZero(text, 0, text.length());
+    }
+
+    /**
+     * Value of an optionally quoted -?[0-9]{1,9} without leading zeros, or NOT_PLAIN
+     * Every org.json reads such a value the same way, quoted or not.
+     */
+    private static int plainInt(byte[] json, int start, int end) {
+        if (end - start >= 2 && json[start] == '"' && json[end - 1] == '"') {
+            start++;
+            end--;
+        }
+        boolean negative = start < end && json[start] == '-';
+        int i = negative ? start + 1 : start;
+        int digits = end - i;
+        if (digits < 1 || digits > 9 || (json[i] == '0' && digits > 1)) return NOT_PLAIN;
+        int value = 0;
+        for (; i < end; i++) {
+            byte b = json[i];
+            if (b < '0' || b > '9') return NOT_PLAIN;
+            value = value * 10 + (b - '0');
+        }
+        return negative ? -value : value;
+    }
+
+    private static JSONArray parse(byte[] json, int start, int end) {
+        try {
+            return new JSONArray("[" + new String(json, start, end - start, StandardCharsets.UTF_8) + "]");
+        } catch (JSONException e) {
+            return null;
+        }
+    }
+}
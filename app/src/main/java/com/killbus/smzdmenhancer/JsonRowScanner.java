@@ -0,0 +1,228 @@
+package com.killbus.smzdmenhancer;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reads the top-level fields of one UTF-8 encoded row object into an ArticleRow
+ * Only the string values the rules need are decoded; everything else is skipped in place
+ */
+public class JsonRowScanner {
+    private static final byte[] KEY_COMMENT = utf8("article_comment");
+    private static final byte[] KEY_ID = utf8("article_id");
+    private static final byte[] KEY_WORTHY = utf8("article_worthy");
+    private static final byte[] KEY_UNWORTHY = utf8("article_unworthy");
+    private static final byte[] KEY_CHANNEL = utf8("article_channel_id");
+    private static final byte[] KEY_TITLE = utf8("article_title");
+    private static final byte[] KEY_PRICE = utf8("article_price");
+    private static final byte[] KEY_MALL = utf8("article_mall");
+
+    private final byte[] buf;
+    private final int end;
+    private int pos;
+
+    private JsonRowScanner(byte[] buf, int start, int end) {
+        this.buf = buf;
+        this.pos = start;
+        this.end = end;
+    }
+
+    /**
+     * Fill a row from a complete JSON object
+     *
+     * @param buf Buffer holding the object.
+     * @param length Number of bytes of the object, starting at 0.
+     * @param row Receives the fields; reset first.
+     * @param withPriceFields Also decode title, price and mall and extract their numbers.
+     * @param withTitle Decode the title even without price rules (for duplicates and logging).
+     * @return false if the object is malformed.
+     */
+    public static boolean scan(byte[] buf, int length, ArticleRow row, boolean withPriceFields, boolean withTitle) {
+        row.reset();
+        JsonRowScanner scanner = new JsonRowScanner(buf, 0, length);
+        try {
+            return scanner.readObject(row, withPriceFields, withTitle || withPriceFields);
+        } catch (RuntimeException e) {
+            // Truncated input runs off the buffer; anything else is just as malformed
+            return false;
+        }
+    }
+
+    private boolean readObject(ArticleRow row, boolean withPriceFields, boolean withTitle) {
+        skipWhitespace();
+        if (buf[pos++] != '{') return false;
+        skipWhitespace();
+        if (buf[pos] == '}') return finish(row, withPriceFields, withTitle);
+
+        while (true) {
+            skipWhitespace();
+            if (buf[pos] != '"') return false;
+            int keyStart = pos + 1;
+            skipString();
+            int keyEnd = pos - 1;
+            skipWhitespace();
+            if (buf[pos++] != ':') return false;
+            skipWhitespace();
+            int valueStart = pos;
+
+            if (keyEquals(keyStart, keyEnd, KEY_COMMENT)) {
+                row.commentCount = JsonNumbers.optStringInt(buf, valueStart, valueEnd());
+            } else if (keyEquals(keyStart, keyEnd, KEY_ID)) {
+                row.articleId = SeenArticleStore.parseId(readText());
+            } else if (keyEquals(keyStart, keyEnd, KEY_WORTHY)) {
+                row.worthy = JsonNumbers.optInt(buf, valueStart, valueEnd());
+            } else if (keyEquals(keyStart, keyEnd, KEY_UNWORTHY)) {
+                row.unworthy = JsonNumbers.optInt(buf, valueStart, valueEnd());
+            } else if (keyEquals(keyStart, keyEnd, KEY_CHANNEL)) {
+                row.channelId = JsonNumbers.optInt(buf, valueStart, valueEnd());
+            } else if (withTitle && keyEquals(keyStart, keyEnd, KEY_TITLE)) {
+                row.title = readText();
+            } else if (withPriceFields && keyEquals(keyStart, keyEnd, KEY_PRICE)) {
+                row.price = readText();
+            } else if (withPriceFields && keyEquals(keyStart, keyEnd, KEY_MALL)) {
+                row.mall = readText();
+            } else {
+                skipValue();
+            }
+
+            skipWhitespace();
+            byte c = buf[pos++];
+            if (c == '}') break;
+            if (c != ',') return false;
+        }
+
+        return finish(row, withPriceFields, withTitle);
+    }
+
+    private static boolean finish(ArticleRow row, boolean withPriceFields, boolean withTitle) {
+        // Absent fields read as "" like optString(key, ""), so duplicates match the String filter
+        if (withTitle && row.title == null) row.title = "";
+        if (withPriceFields) {
+            if (row.price == null) row.price = "";
+            if (row.mall == null) row.mall = "";
+            row.extractPriceFields();
+        }
+        return true;
+    }
+
+    /**
+     * Skip the value at pos and return where it ends, without trailing whitespace
+     */
+    private int valueEnd() {
+        int start = pos;
+        skipValue();
+        int to = pos;
+        while (to > start && isWhitespace(buf[to - 1])) to--;
+        return to;
+    }
+
+    /**
+     * Read a value as text: strings are unescaped, other scalars are returned as written
+     */
+    private String readText() {
+        int start = pos;
+        if (buf[pos] != '"') {
+            return new String(buf, start, valueEnd() - start, StandardCharsets.UTF_8);
+        }
+
+        skipString();
+        String raw = new String(buf, start + 1, pos - start - 2, StandardCharsets.UTF_8);
+        return raw.indexOf('\\') >= 0 ? unescape(raw) : raw;
+    }
+
+    private void skipValue() {
+        byte c = buf[pos];
+        if (c == '"') {
+            skipString();
+            return;
+        }
+        if (c == '{' || c == '[') {
+            int depth = 0;
+            while (true) {
+                c = buf[pos];
+                if (c == '"') {
+                    skipString();
+                    continue;
+                }
+                pos++;
+                if (c == '{' || c == '[') {
+                    depth++;
+                } else if ((c == '}' || c == ']') && --depth == 0) {
+                    return;
+                }
+            }
+        }
+        while (pos < end) {
+            c = buf[pos];
+            if (c == ',' || c == '}' || c == ']') return;
+            pos++;
+        }
+    }
+
+    /**
+     * Skip a string starting at the opening quote, leaving pos after the closing quote
+     */
+    private void skipString() {
+        pos++;
+        while (true) {
+            byte c = buf[pos++];
+            if (c == '\\') {
+                pos++;
+            } else if (c == '"') {
+                return;
+            }
+        }
+    }
+
+    private void skipWhitespace() {
+        while (pos < end && isWhitespace(buf[pos])) pos++;
+    }
+
+    private boolean keyEquals(int start, int endExclusive, byte[] key) {
+        if (endExclusive - start != key.length) return false;
+        for (int i = 0; i < key.length; i++) {
+            if (buf[start + i] != key[i]) return false;
+        }
+        return true;
+    }
+
+    private static boolean isWhitespace(byte c) {
+        return c == ' ' || c == '\n' || c == '\r' || c == '\t';
+    }
+
+    private static String unescape(String s) {
+        StringBuilder sb = new StringBuilder(s.length());
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c != '\\' || i + 1 >= s.length()) {
+                sb.append(c);
+                continue;
+            }
+            char e = s.charAt(++i);
+            switch (e) {
+                case 'n': sb.append('\n'); break;
+                case 'r': sb.append('\r'); break;
+                case 't': sb.append('\t'); break;
+                case 'b': sb.append('\b'); break;
+                case 'f': sb.append('\f'); break;
+                case 'u':
+                    if (i + 4 < s.length()) {
+                        try {
+                            sb.append((char) Integer.parseInt(s.substring(i + 1, i + 5), 16));
+                            i += 4;
+                            break;
+                        } catch (NumberFormatException ex) {
+                            // Fall through and keep the raw character
+                        }
+                    }
+                    sb.append(e);
+                    break;
+                default: sb.append(e); break;
+            }
+        }
+        return sb.toString();
+    }
+
+    private static byte[] utf8(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,144 @@
+package com.killbus.smzdmenhancer;
+
+import com.killbus.smzdmenhancer.utils.MemoryGovernor;
+
+/**
+ * Interns mall names from the configuration into small int IDs
+ * so allow/deny checks become a bit test
+ */
+public class MallRegistry {
+    /**
+     * Open-addressing table of normalized names
+     * Copy-on-write: interning happens only when rules are compiled, lookups happen per row
+     */
+    private static final class Table {
+        final String[] names;
+        final int[] ids;
+        final int size;
+
+        Table(int capacity, int size) {
+            this.names = new String[capacity];
+            this.ids = new int[capacity];
+            this.size = size;
+        }
+    }
+
+    private static volatile Table table = new Table(16, 0);
+    private static volatile long tableBytes = estimatedBytes(table);
+
+    /**
+     * Memory consumer for the name table
+     * Compiled rules hold the IDs, so the table cannot be trimmed; it is counted against the budget
+     */
+    public static final MemoryGovernor.Consumer CONSUMER = new MemoryGovernor.Consumer() {
+        @Override
+        public String name() {
+            return "malls";
+        }
+
+        @Override
+        public long estimatedBytes() {
+            return tableBytes;
+        }
+
+        @Override
+        public void trimTo(long maxBytes) {
+        }
+    };
+
+    /**
+     * Get or assign the ID of a configured mall name
+     */
+    public static synchronized int intern(String mall) {
+        String key = normalize(mall.trim());
+        Table current = table;
+        int id = find(current, key, 0, key.length());
+        if (id >= 0) return id;
+
+        id = current.size;
+        int capacity = current.names.length;
+        while ((id + 1) * 2 > capacity) capacity *= 2;
+        Table copy = new Table(capacity, id + 1);
+        for (int i = 0; i < current.names.length; i++) {
+            if (current.names[i] != null) insert(copy, current.names[i], current.ids[i]);
+        }
+        insert(copy, key, id);
+        table = copy;
+        tableBytes = estimatedBytes(copy);
+        return id;
+    }
+
+    /**
+     * Get the ID of a mall name seen in a row, without registering it
+     * Matches ignoring case and surrounding whitespace without allocating
+     *
+     * @return The interned ID, or -1 if the mall is not configured anywhere.
+     */
+    public static int lookup(String mall) {
+        if (mall == null) return -1;
+        int start = 0;
+        int end = mall.length();
+        while (start < end && mall.charAt(start) <= ' ') start++;
+        while (end > start && mall.charAt(end - 1) <= ' ') end--;
+        if (start == end) return -1;
+        return find(table, mall, start, end);
+    }
+
+    // Slot arrays plus each name's String and char array
+    private static long estimatedBytes(Table t) {
+        long bytes = t.names.length * 8L;
+        for (String name : t.names) {
+            if (name != null) bytes += 40 + 2L * name.length();
+        }
+        return bytes;
+    }
+
+    private static int find(Table t, String text, int start, int end) {
+        int mask = t.names.length - 1;
+        int slot = hash(text, start, end) & mask;
+        while (true) {
+            String name = t.names[slot];
+            if (name == null) return -1;
+            if (matches(name, text, start, end)) return t.ids[slot];
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    private static void insert(Table t, String name, int id) {
+        int mask = t.names.length - 1;
+        int slot = hash(name, 0, name.length()) & mask;
+        while (t.names[slot] != null) slot = (slot + 1) & mask;
+        t.names[slot] = name;
+        t.ids[slot] = id;
+    }
+
+    // Hash of the lower-cased chars, so raw row text hashes like its normalized form
+    private static int hash(String text, int start, int end) {
+        int h = 0;
+        for (int i = start; i < end; i++) {
+            h = h * 31 + lower(text.charAt(i));
+        }
+        return h ^ (h >>> 16);
+    }
+
+    private static boolean matches(String name, String text, int start, int end) {
+        if (name.length() != end - start) return false;
+        for (int i = 0; i < name.length(); i++) {
+            if (name.charAt(i) != lower(text.charAt(start + i))) return false;
+        }
+        return true;
+    }
+
+    private static String normalize(String mall) {
+        char[] chars = new char[mall.length()];
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = lower(mall.charAt(i));
+        }
+        return new String(chars);
+    }
+
+    // Mall names are Chinese or Latin, so folding ASCII letters is enough
+    private static char lower(char c) {
+        return c >= 'A' && c <= 'Z' ? (char) (c + 32) : c;
+    }
+}
@@ -0,0 +1,41 @@
+package com.killbus.smzdmenhancer;
+
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.res.Configuration;
+
+import com.killbus.smzdmenhancer.utils.Logger;
+import com.killbus.smzdmenhancer.utils.MemoryGovernor;
+
+/**
+ * Forwards the app's memory pressure callbacks to the MemoryGovernor
+ */
+public class MemoryTrimCallbacks implements ComponentCallbacks2 {
+    private static boolean registered;
+
+    /**
+     * Register on the app context once per process
+     */
+    public static synchronized void register(Context context) {
+        if (registered) return;
+        context.registerComponentCallbacks(new MemoryTrimCallbacks());
+        registered = true;
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        Logger.debug("onTrimMemory(" + level + ")");
+        MemoryGovernor.get().onTrimMemory(level);
+    }
+
+    @Override
+    public void onLowMemory() {
+        Logger.debug("onLowMemory()");
+        MemoryGovernor.get().onLowMemory();
+    }
+
+    @Override
+    public void onConfigurationChanged(Configuration newConfig) {
+        // Not memory related
+    }
+}
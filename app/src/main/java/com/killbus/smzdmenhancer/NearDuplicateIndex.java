@@ -0,0 +1,295 @@
+package com.killbus.smzdmenhancer;
+
+import com.killbus.smzdmenhancer.utils.Clock;
+import com.killbus.smzdmenhancer.utils.MemoryGovernor;
+import com.killbus.smzdmenhancer.utils.Metrics;
+import com.killbus.smzdmenhancer.utils.SimHash;
+
+import java.util.Arrays;
+
+/**
+ * Bounded index of recent title SimHashes for collapsing near-duplicate deals
+ *
+ * Six disjoint 10-bit bands are taken from the fingerprint. Two fingerprints
+ * within 5 bits of each other share at least one band exactly, so a lookup
+ * only has to check the entries filed under each of its 6 band buckets.
+ * Buckets have a fixed number of slots and their count grows with the window
+ * (up to one per band value), so a lookup checks at most 96 candidates
+ * whatever the window size. A full bucket overwrites its oldest slot.
+ * Entries live in a fixed-size ring.
+ */
+public class NearDuplicateIndex {
+    /**
+     * Row is new or the best of its cluster
+     */
+    public static final int KEEP = -1;
+
+    /**
+     * A better or equal row of the same cluster was already shown
+     */
+    public static final int DROP = -2;
+
+    private static final int BANDS = 6;
+    private static final int BAND_BITS = 10;
+    private static final int SLOTS = 16;
+    private static final int MIN_CAPACITY = 16;
+
+    private final Clock clock;
+    private final int capacity;
+    private final int bucketMask;
+
+    // Entry ring
+    private final long[] hashes;
+    private final long[] articleIds;
+    private final int[] scores;
+    private final long[] times;
+    private final long[] pages;
+    private final int[] pageRows;
+    private int next;
+    private int size;
+
+    // Per band: buckets of SLOTS entry indexes + 1 (0 = empty), and the next slot to overwrite
+    private final int[][] buckets = new int[BANDS][];
+    private final byte[][] cursors = new byte[BANDS][];
+    private long probes;
+
+    private long pageCounter;
+
+    private static volatile NearDuplicateIndex shared;
+
+    public NearDuplicateIndex(int capacity, Clock clock) {
+        this.clock = clock;
+        this.capacity = Math.max(MIN_CAPACITY, capacity);
+        int bucketCount = bucketCount(this.capacity);
+        this.bucketMask = bucketCount - 1;
+        hashes = new long[this.capacity];
+        articleIds = new long[this.capacity];
+        scores = new int[this.capacity];
+        times = new long[this.capacity];
+        pages = new long[this.capacity];
+        pageRows = new int[this.capacity];
+        for (int band = 0; band < BANDS; band++) {
+            buckets[band] = new int[bucketCount * SLOTS];
+            cursors[band] = new byte[bucketCount];
+        }
+        Arrays.fill(times, Long.MIN_VALUE);
+    }
+
+    /**
+     * The shared index, created on first use with Config.DEDUP_WINDOW_SIZE entries
+     */
+    public static NearDuplicateIndex get() {
+        NearDuplicateIndex index = shared;
+        if (index == null) {
+            synchronized (NearDuplicateIndex.class) {
+                index = shared;
+                if (index == null) {
+                    index = new NearDuplicateIndex(Config.DEDUP_WINDOW_SIZE, Clock.SYSTEM);
+                    shared = index;
+                }
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Memory consumer for the shared index
+     * Trimming swaps in a smaller index holding the newest entries, which stays
+     * in place so the next page does not rebuild the full window
+     */
+    public static final MemoryGovernor.Consumer DEDUP_CONSUMER = new MemoryGovernor.Consumer() {
+        @Override
+        public String name() {
+            return "dedup";
+        }
+
+        @Override
+        public long estimatedBytes() {
+            NearDuplicateIndex index = shared;
+            return index != null ? index.estimatedBytes() : 0;
+        }
+
+        @Override
+        public void trimTo(long maxBytes) {
+            synchronized (NearDuplicateIndex.class) {
+                if (shared != null) {
+                    shared = shared.trimmedTo(maxBytes);
+                }
+            }
+        }
+    };
+
+    /**
+     * Start a new page; rows offered with the returned ID can replace each other
+     */
+    public synchronized long beginPage() {
+        return ++pageCounter;
+    }
+
+    /**
+     * Offer a row to the index
+     *
+     * @param hash SimHash of the row title, 0 to skip.
+     * @param articleId Row ID; a row matching itself (re-delivered page) is always kept.
+     * @param score Higher is better.
+     * @param page Value from beginPage().
+     * @param pageRow Index of the row in its page, or -1 if it cannot be retracted later.
+     * @return KEEP, DROP, or the pageRow of an earlier row of the same page that this row replaces.
+     */
+    public synchronized int offer(long hash, long articleId, int score, long page, int pageRow) {
+        if (hash == 0) return KEEP;
+
+        long now = clock.nanoTime() / 1_000_000L;
+        long oldest = now - Config.DEDUP_WINDOW_MINUTES * 60_000L;
+        int best = -1;
+
+        for (int band = 0; band < BANDS; band++) {
+            int base = bucket(hash, band) * SLOTS;
+            int[] table = buckets[band];
+            probes += SLOTS;
+            for (int s = 0; s < SLOTS; s++) {
+                int entry = table[base + s] - 1;
+                if (entry < 0 || times[entry] < oldest) continue;
+                if (Long.bitCount(hashes[entry] ^ hash) > Config.DEDUP_MAX_HAMMING) continue;
+                if (articleIds[entry] == articleId) {
+                    return KEEP;
+                }
+                if (best < 0 || scores[entry] > scores[best]) best = entry;
+            }
+        }
+
+        if (best < 0) {
+            insert(hash, articleId, score, now, page, pageRow);
+            return KEEP;
+        }
+        if (scores[best] >= score) {
+            Metrics.increment("dedup.dropped");
+            return DROP;
+        }
+
+        // This row becomes the cluster representative
+        int replaced = pages[best] == page ? pageRows[best] : KEEP;
+        times[best] = Long.MIN_VALUE;
+        insert(hash, articleId, score, now, page, pageRow);
+        if (replaced >= 0) Metrics.increment("dedup.replaced");
+        return replaced;
+    }
+
+    /**
+     * Offer a row by its title and score
+     *
+     * @param weights Scratch array of 64 ints for SimHash.
+     * @see #offer(long, long, int, long, int)
+     */
+    public int offer(ArticleRow row, long page, int pageRow, int[] weights) {
+        if (row.title == null) return KEEP;
+        return offer(SimHash.hash(row.title, weights), row.articleId, row.score(), page, pageRow);
+    }
+
+    /**
+     * Number of entries currently held
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Bucket slots checked by all offers so far
+     */
+    synchronized long probes() {
+        return probes;
+    }
+
+    /**
+     * Maximum number of entries
+     */
+    public int capacity() {
+        return capacity;
+    }
+
+    /**
+     * Approximate heap footprint in bytes
+     */
+    public long estimatedBytes() {
+        return estimatedBytes(capacity);
+    }
+
+    /**
+     * An index of at most maxBytes holding the newest entries of this one
+     * Capacity is halved until it fits, down to MIN_CAPACITY
+     *
+     * @return This index if it already fits.
+     */
+    public synchronized NearDuplicateIndex trimmedTo(long maxBytes) {
+        int newCapacity = capacity;
+        while (newCapacity > MIN_CAPACITY && estimatedBytes(newCapacity) > maxBytes) {
+            newCapacity = Math.max(MIN_CAPACITY, newCapacity / 2);
+        }
+        if (newCapacity == capacity) return this;
+
+        NearDuplicateIndex trimmed = new NearDuplicateIndex(newCapacity, clock);
+        // Pages already handed out stay distinct from the ones the trimmed index hands out
+        trimmed.pageCounter = pageCounter;
+        int count = Math.min(size, newCapacity);
+        for (int i = count; i > 0; i--) {
+            int entry = (next - i + capacity) % capacity;
+            // Replaced representatives are never matched again
+            if (times[entry] == Long.MIN_VALUE) continue;
+            trimmed.insert(hashes[entry], articleIds[entry], scores[entry], times[entry], pages[entry], pageRows[entry]);
+        }
+        Metrics.gauge("dedup.size", trimmed.size);
+        return trimmed;
+    }
+
+    /**
+     * Forget all entries
+     */
+    public synchronized void clear() {
+        for (int band = 0; band < BANDS; band++) {
+            Arrays.fill(buckets[band], 0);
+            Arrays.fill(cursors[band], (byte) 0);
+        }
+        Arrays.fill(times, Long.MIN_VALUE);
+        size = 0;
+        next = 0;
+    }
+
+    private void insert(long hash, long articleId, int score, long now, long page, int pageRow) {
+        int entry = next;
+        next = (next + 1) % capacity;
+        if (size < capacity) {
+            size++;
+            Metrics.gauge("dedup.size", size);
+        }
+
+        hashes[entry] = hash;
+        articleIds[entry] = articleId;
+        scores[entry] = score;
+        times[entry] = now;
+        pages[entry] = page;
+        pageRows[entry] = pageRow;
+
+        for (int band = 0; band < BANDS; band++) {
+            // Slots are written in turn, so the cursor always points at the oldest one
+            int bucket = bucket(hash, band);
+            int cursor = cursors[band][bucket];
+            buckets[band][bucket * SLOTS + cursor] = entry + 1;
+            cursors[band][bucket] = (byte) ((cursor + 1) & (SLOTS - 1));
+        }
+    }
+
+    private static long estimatedBytes(int capacity) {
+        return capacity * (8L + 8 + 4 + 8 + 8 + 4) + (long) BANDS * bucketCount(capacity) * (SLOTS * 4 + 1);
+    }
+
+    /**
+     * Enough buckets to keep them about half full, at most one per band value
+     */
+    private static int bucketCount(int capacity) {
+        return Math.min(1 << BAND_BITS, Integer.highestOneBit(capacity * 2 / SLOTS - 1) << 1);
+    }
+
+    private int bucket(long hash, int band) {
+        return (int) (hash >>> (band * BAND_BITS)) & bucketMask;
+    }
+}
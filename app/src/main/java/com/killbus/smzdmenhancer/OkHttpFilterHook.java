@@ -0,0 +1,141 @@
+package com.killbus.smzdmenhancer;
+
+import com.killbus.smzdmenhancer.utils.Logger;
+import com.killbus.smzdmenhancer.utils.Metrics;
+
+import java.io.InputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.List;
+
+import de.robv.android.xposed.XC_MethodHook;
+import de.robv.android.xposed.XposedHelpers;
+
+/**
+ * Filters /home/list at the HTTP layer instead of in the decoded String callback
+ *
+ * Adds an OkHttp application interceptor to every client the app builds.
+ * For dingyue-api.smzdm.com/home/list the response body is replaced with a
+ * RowFilterInputStream over the original byte stream, so the app's own
+ * parser only receives the kept rows.
+ */
+public class OkHttpFilterHook {
+    private static final String HOST = "dingyue-api.smzdm.com";
+    private static final String PATH = "/home/list";
+
+    private static Object interceptor;
+
+    /**
+     * Hook OkHttpClient.Builder.build() to add the filtering interceptor
+     */
+    public static synchronized void install(final ClassLoader classLoader) {
+        if (interceptor != null) {
+            return;
+        }
+        try {
+            final Class<?> interceptorClass = XposedHelpers.findClass("okhttp3.Interceptor", classLoader);
+            interceptor = Proxy.newProxyInstance(
+                classLoader,
+                new Class<?>[] { interceptorClass },
+                new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                        if ("intercept".equals(method.getName())) {
+                            return intercept(classLoader, args[0]);
+                        }
+                        if ("equals".equals(method.getName())) {
+                            return proxy == args[0];
+                        }
+                        if ("hashCode".equals(method.getName())) {
+                            return System.identityHashCode(proxy);
+                        }
+                        if ("toString".equals(method.getName())) {
+                            return "SMZDMEnhancerInterceptor";
+                        }
+                        return null;
+                    }
+                }
+            );
+
+            XposedHelpers.findAndHookMethod(
+                "okhttp3.OkHttpClient$Builder",
+                classLoader,
+                "build",
+                new XC_MethodHook() {
+                    @Override
+                    protected void beforeHookedMethod(MethodHookParam param) throws Throwable {
+                        List<?> interceptors = (List<?>) XposedHelpers.callMethod(param.thisObject, "interceptors");
+                        if (!interceptors.contains(interceptor)) {
+                            XposedHelpers.callMethod(param.thisObject, "addInterceptor", interceptor);
+                        }
+                    }
+                }
+            );
+            Logger.info("Successfully hooked OkHttpClient.Builder for byte-level filtering");
+        } catch (Throwable t) {
+            interceptor = null;
+            Logger.error("Failed to hook OkHttp, falling back to String filtering", t);
+        }
+    }
+
+    /**
+     * Whether a String response is a body already filtered here
+     * Matches the body itself, so responses that bypassed the interceptor are still filtered
+     */
+    public static boolean consumeFiltered(String body) {
+        return RowFilterInputStream.consumeEmitted(body);
+    }
+
+    private static Object intercept(ClassLoader classLoader, Object chain) throws Throwable {
+        Object request = XposedHelpers.callMethod(chain, "request");
+        Object response;
+        try {
+            response = XposedHelpers.callMethod(chain, "proceed", request);
+        } catch (XposedHelpers.InvocationTargetError e) {
+            // Let OkHttp see the original IOException
+            throw e.getCause();
+        }
+        try {
+            Object url = XposedHelpers.callMethod(request, "url");
+            if (!HOST.equals(XposedHelpers.callMethod(url, "host"))
+                    || !PATH.equals(XposedHelpers.callMethod(url, "encodedPath"))) {
+                return response;
+            }
+            if (!(Boolean) XposedHelpers.callMethod(response, "isSuccessful")) {
+                return response;
+            }
+            Object body = XposedHelpers.callMethod(response, "body");
+            if (body == null) {
+                return response;
+            }
+
+            InputStream filtered = new RowFilterInputStream(
+                (InputStream) XposedHelpers.callMethod(body, "byteStream"));
+            Class<?> okioClass = XposedHelpers.findClass("okio.Okio", classLoader);
+            Object source = XposedHelpers.callStaticMethod(okioClass, "source", filtered);
+            Object bufferedSource = XposedHelpers.callStaticMethod(okioClass, "buffer", source);
+
+            Class<?> mediaTypeClass = XposedHelpers.findClass("okhttp3.MediaType", classLoader);
+            Class<?> bufferedSourceClass = XposedHelpers.findClass("okio.BufferedSource", classLoader);
+            Class<?> responseBodyClass = XposedHelpers.findClass("okhttp3.ResponseBody", classLoader);
+            Object newBody = XposedHelpers.callStaticMethod(
+                responseBodyClass,
+                "create",
+                new Class<?>[] { mediaTypeClass, long.class, bufferedSourceClass },
+                XposedHelpers.callMethod(body, "contentType"),
+                -1L,
+                bufferedSource
+            );
+
+            Object builder = XposedHelpers.callMethod(response, "newBuilder");
+            XposedHelpers.callMethod(builder, "removeHeader", "Content-Length");
+            XposedHelpers.callMethod(builder, "body", newBody);
+            Metrics.increment("bytefilter.responses");
+            return XposedHelpers.callMethod(builder, "build");
+        } catch (Throwable t) {
+            Logger.error("Byte-level filtering failed, passing response through", t);
+            return response;
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package com.killbus.smzdmenhancer;
+
+/**
+ * Cheap string scan run before the full JSON filter
+ * Decides whether a response can possibly lose rows without parsing it
+ */
+public class PrescanFilter {
+    private static final String COMMENT_KEY = "\"article_comment\"";
+    private static final String ID_KEY = "\"article_id\"";
+
+    /**
+     * Scan the raw response for rows that the full filter could drop.
+     * The scan is conservative: when in doubt it reports a candidate.
+     *
+     * @param jsonStr The raw JSON response string.
+     * @param stats Receives the approximate row count; dropped stays 0.
+     * @return true if the full filter has to run, false if no row can be dropped.
+     */
+    public static boolean mayFilter(String jsonStr, FilterStats stats) {
+        stats.reset();
+
+        // Price, duplicate and expression rules need the decoded row, which is what the full filter is for
+        RuleSnapshot rules = RuleSnapshot.current();
+        if (rules.usesTitle() || rules.hasExpression()) {
+            return true;
+        }
+
+        int comments = 0;
+        int index = jsonStr.indexOf(COMMENT_KEY);
+        while (index >= 0) {
+            comments++;
+            int end = index + COMMENT_KEY.length();
+            if (readInt(jsonStr, end) < Config.COMMENT_THRESHOLD) {
+                stats.rows = comments;
+                return true;
+            }
+            index = jsonStr.indexOf(COMMENT_KEY, end);
+        }
+        stats.rows = comments;
+
+        SeenArticleStore seenStore = Config.HIDE_SEEN_ARTICLES ? SeenArticleStore.get() : null;
+        int ids = 0;
+        index = jsonStr.indexOf(ID_KEY);
+        while (index >= 0) {
+            ids++;
+            int end = index + ID_KEY.length();
+            if (seenStore != null && seenStore.contains(readLong(jsonStr, end))) {
+                return true;
+            }
+            index = jsonStr.indexOf(ID_KEY, end);
+        }
+
+        // A row without article_comment counts as 0 comments in the full filter
+        return ids != comments;
+    }
+
+    /**
+     * Read the integer value following a key, quoted or not, with the same
+     * JsonNumbers routine the full filter applies to the optString value.
+     * Escaped strings are not decoded here; they read as Integer.MIN_VALUE so the full filter decides.
+     */
+    private static int readInt(String s, int pos) {
+        int length = s.length();
+        while (pos < length && (s.charAt(pos) == ':' || isWhitespace(s.charAt(pos)))) pos++;
+        if (pos >= length) return 0;
+
+        if (s.charAt(pos) == '"') {
+            int end = pos + 1;
+            while (end < length && s.charAt(end) != '"') {
+                if (s.charAt(end) == '\\') return Integer.MIN_VALUE;
+                end++;
+            }
+            return JsonNumbers.parseIntOrZero(s, pos + 1, end);
+        }
+
+        // A bare token is what optString returns for it, give or take surrounding whitespace
+        int end = pos;
+        while (end < length) {
+            char c = s.charAt(end);
+            if (c == ',' || c == '}' || c == ']' || isWhitespace(c)) break;
+            end++;
+        }
+        return JsonNumbers.parseIntOrZero(s, pos, end);
+    }
+
+    /**
+     * Read the positive long value following a key, quoted or not, or 0 if there is none
+     */
+    private static long readLong(String s, int pos) {
+        int length = s.length();
+        while (pos < length && (s.charAt(pos) == ' ' || s.charAt(pos) == ':' || s.charAt(pos) == '"')) pos++;
+
+        long value = 0;
+        int digits = 0;
+        while (pos < length && digits < 18) {
+            char c = s.charAt(pos);
+            if (c < '0' || c > '9') break;
+            value = value * 10 + (c - '0');
+            digits++;
+            pos++;
+        }
+        return value;
+    }
+
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\n' || c == '\r' || c == '\t';
+    }
+}
@@ -0,0 +1,77 @@
+package com.killbus.smzdmenhancer;
+
+/**
+ * Single-pass scanner for price, discount and historical-low markers in row text
+ * Hand-written to avoid creating regex matchers for every row
+ *
+ * Recognizes:
+ * - "99元", "99.9元", "¥99", "1,299元" as a price
+ * - "5.5折" as a discount
+ * - "史低" / "历史低价" as a historical low marker
+ */
+public class PriceExtractor {
+
+    /**
+     * Scan text and fill fields of the row that are still unset
+     */
+    public static void scan(CharSequence text, ArticleRow row) {
+        int length = text.length();
+        boolean currencyPrefix = false;
+        int i = 0;
+        while (i < length) {
+            char c = text.charAt(i);
+
+            if (c >= '0' && c <= '9') {
+                // Parse "123", "1,299" or "12.34" as hundredths
+                long whole = 0;
+                while (i < length) {
+                    c = text.charAt(i);
+                    if (c >= '0' && c <= '9') {
+                        if (whole < 100_000_000) whole = whole * 10 + (c - '0');
+                        i++;
+                    } else if (c == ',' && i + 1 < length && isDigit(text.charAt(i + 1))) {
+                        i++;
+                    } else {
+                        break;
+                    }
+                }
+                int fraction = 0;
+                if (i + 1 < length && text.charAt(i) == '.' && isDigit(text.charAt(i + 1))) {
+                    i++;
+                    int scale = 10;
+                    while (i < length && isDigit(text.charAt(i))) {
+                        fraction += (text.charAt(i) - '0') * scale;
+                        scale /= 10;
+                        i++;
+                    }
+                }
+                long hundredths = whole * 100 + fraction;
+
+                int next = i;
+                while (next < length && text.charAt(next) == ' ') next++;
+                char unit = next < length ? text.charAt(next) : 0;
+                if ((unit == '元' || currencyPrefix) && row.priceCents < 0 && hundredths <= Integer.MAX_VALUE) {
+                    row.priceCents = (int) hundredths;
+                } else if (unit == '折' && row.discountTenths < 0 && hundredths > 0 && hundredths < 1000) {
+                    row.discountTenths = (int) (hundredths / 10);
+                }
+                currencyPrefix = false;
+                continue;
+            }
+
+            if (c == '¥' || c == '￥') {
+                currencyPrefix = true;
+            } else if (c != ' ') {
+                currencyPrefix = false;
+                if (c == '史' && i + 1 < length && text.charAt(i + 1) == '低') {
+                    row.historicalLow = true;
+                }
+            }
+            i++;
+        }
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+}
@@ -0,0 +1,168 @@
+package com.killbus.smzdmenhancer;
+
+import com.killbus.smzdmenhancer.utils.FastHash;
+import com.killbus.smzdmenhancer.utils.MemoryGovernor;
+import com.killbus.smzdmenhancer.utils.Metrics;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded cache of filter results for whole response bodies
+ *
+ * Back navigation, retries and the app's own HTTP cache re-deliver
+ * byte-identical /home/list bodies. Entries are keyed by a 64-bit hash of
+ * the body, its length and the rule state it was filtered under, so a
+ * repeated body costs one hash pass instead of a parse and a filter run.
+ * Eviction is least-recently-used, bounded by the total characters held.
+ *
+ * With near-duplicate collapsing on, a result also depends on the titles
+ * seen before, and re-filtering a body updates that window, so nothing is cached.
+ */
+public class ResponseMemo implements MemoryGovernor.Consumer {
+    /**
+     * Cached result meaning the filter left the body unchanged
+     */
+    public static final String NO_CHANGE = new String("");
+
+    // Rough per-entry cost of the key, map node and String header, in chars
+    private static final int ENTRY_OVERHEAD_CHARS = 48;
+
+    private final long maxChars;
+    private final LinkedHashMap<Key, String> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long totalChars;
+    private long hits;
+    private long misses;
+
+    public ResponseMemo(long maxChars) {
+        this.maxChars = maxChars;
+    }
+
+    /**
+     * Key for a body under the current rule snapshot and seen-article state
+     *
+     * @return The key, or null if results under the current rules cannot be reused.
+     */
+    public static Key keyOf(String body) {
+        RuleSnapshot rules = RuleSnapshot.current();
+        if (rules.dedup()) {
+            Metrics.increment("memo.bypassed");
+            return null;
+        }
+        SeenArticleStore seen = SeenArticleStore.get();
+        long state = (long) rules.version << 32
+            | (seen != null ? seen.generation() & 0xffffffffL : 0);
+        return new Key(FastHash.hash(body), body.length(), state);
+    }
+
+    /**
+     * Look up a cached result
+     *
+     * @return The filtered body, NO_CHANGE, or null on a miss.
+     */
+    public synchronized String get(Key key) {
+        String result = entries.get(key);
+        if (result == null) {
+            misses++;
+            Metrics.increment("memo.misses");
+        } else {
+            hits++;
+            Metrics.increment("memo.hits");
+            // Parsing and filtering works on the UTF-16 body, 2 bytes per char
+            Metrics.add("memo.bytes_saved", key.length * 2L);
+        }
+        Metrics.gauge("memo.hit_rate", (double) hits / (hits + misses));
+        return result;
+    }
+
+    /**
+     * Cache a result
+     *
+     * @param result The filtered body, or NO_CHANGE.
+     */
+    public synchronized void put(Key key, String result) {
+        long cost = result.length() + ENTRY_OVERHEAD_CHARS;
+        if (cost > maxChars / 4) {
+            // One large body would push out everything else
+            return;
+        }
+        String previous = entries.put(key, result);
+        if (previous != null) {
+            totalChars -= previous.length() + ENTRY_OVERHEAD_CHARS;
+        }
+        totalChars += cost;
+        evictTo(maxChars);
+    }
+
+    /**
+     * Evict least recently used entries until at most maxChars are held
+     */
+    private void evictTo(long maxChars) {
+        Iterator<Map.Entry<Key, String>> it = entries.entrySet().iterator();
+        while (totalChars > maxChars && it.hasNext()) {
+            totalChars -= it.next().getValue().length() + ENTRY_OVERHEAD_CHARS;
+            it.remove();
+            Metrics.increment("memo.evictions");
+        }
+        Metrics.gauge("memo.entries", entries.size());
+        Metrics.gauge("memo.chars", totalChars);
+    }
+
+    /**
+     * Characters currently held, including per-entry overhead
+     */
+    public synchronized long totalChars() {
+        return totalChars;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized void clear() {
+        evictTo(0);
+    }
+
+    @Override
+    public String name() {
+        return "memo";
+    }
+
+    @Override
+    public synchronized long estimatedBytes() {
+        return totalChars * 2;
+    }
+
+    @Override
+    public synchronized void trimTo(long maxBytes) {
+        evictTo(maxBytes / 2);
+    }
+
+    /**
+     * Body fingerprint plus the state its result depends on
+     */
+    public static final class Key {
+        final long hash;
+        final int length;
+        final long state;
+
+        Key(long hash, int length, long state) {
+            this.hash = hash;
+            this.length = length;
+            this.state = state;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) return false;
+            Key other = (Key) o;
+            return hash == other.hash && length == other.length && state == other.state;
+        }
+
+        @Override
+        public int hashCode() {
+            return (int) (hash ^ (hash >>> 32)) * 31 + (int) state;
+        }
+    }
+}
@@ -0,0 +1,522 @@
+package com.killbus.smzdmenhancer;
+
+import com.killbus.smzdmenhancer.utils.FastHash;
+import com.killbus.smzdmenhancer.utils.Logger;
+import com.killbus.smzdmenhancer.utils.MemoryGovernor;
+import com.killbus.smzdmenhancer.utils.Metrics;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Streaming filter over the UTF-8 bytes of a /home/list response body
+ *
+ * Bytes before data.rows and after its closing bracket are copied unchanged.
+ * Each element of data.rows is buffered on its own, checked with the same
+ * RuleSnapshot as the String filter, and either emitted or skipped. Only one
+ * row is held in memory at a time and no UTF-16 copy of the body is made.
+ *
+ * If every row is dropped, the last one is kept to avoid breaking the UI,
+ * same as ArticleFilter.filterJsonResponse. On malformed input the rest of
+ * the body is passed through unchanged.
+ *
+ * A fingerprint of each complete output body is remembered, so the String
+ * hook can tell a body filtered here from one that bypassed the stream.
+ */
+public class RowFilterInputStream extends InputStream {
+    private static final int MAX_DEPTH = 64;
+
+    // Fingerprints of recently emitted bodies; a length of 0 marks a free slot
+    private static final int RECENT_BODIES = 8;
+    private static final long[] recentHashes = new long[RECENT_BODIES];
+    private static final int[] recentLengths = new int[RECENT_BODIES];
+    private static int recentCount;
+    private static int recentNext;
+
+    // Buffer bytes held by streams that have not reached the end of their body or been closed
+    private static final AtomicLong liveBufferBytes = new AtomicLong();
+
+    private enum State { HEADER, ROWS, TAIL }
+
+    private final InputStream source;
+    private final RuleSnapshot rules;
+    private final boolean withPriceFields;
+    private final NearDuplicateIndex dedup;
+    private final long page;
+    private final int[] weights;
+    private final FilterStats stats = new FilterStats();
+    private final ArticleRow row = new ArticleRow();
+
+    private final byte[] single = new byte[1];
+    private final byte[] in = new byte[8192];
+    private int inPos;
+    private int inLen;
+    private boolean sourceDone;
+
+    private byte[] out = new byte[8192];
+    private int outPos;
+    private int outLen;
+
+    private State state = State.HEADER;
+
+    // Fingerprint of the output as the decoded String the app will see
+    private final FastHash.Stream digest = new FastHash.Stream();
+    private int codePoint;
+    private int continuationBytes;
+
+    // HEADER tracking: enough JSON structure to find the "rows" array inside "data"
+    private final boolean[] objectAtDepth = new boolean[MAX_DEPTH];
+    private int depth;
+    private boolean inString;
+    private boolean escape;
+    private boolean expectKey;
+    private final byte[] key = new byte[8];
+    private int keyLen;
+    private boolean capturingKey;
+    private int pendingKey; // 0 = none, 1 = "data", 2 = "rows"
+    private int dataDepth = -1;
+
+    // ROWS tracking: the element currently being buffered
+    private byte[] element = new byte[4096];
+    private int elementLen;
+    private int elementDepth;
+    private boolean elementIsContainer;
+    private byte[] lastDropped = new byte[4096];
+    private int lastDroppedLen = -1;
+    private int kept;
+    private long bufferBytes;
+    private boolean buffersReleased;
+
+    public RowFilterInputStream(InputStream source) {
+        this(source, false);
+    }
+
+    /**
+     * @param quiet Leave no trace: no logs, metrics, duplicate window or emitted-body fingerprint.
+     *              Used when exercising the filter during warm-up.
+     */
+    RowFilterInputStream(InputStream source, boolean quiet) {
+        this.source = source;
+        this.rules = RuleSnapshot.current();
+        this.withPriceFields = rules.usesPriceFields();
+        this.stats.quiet = quiet;
+        this.dedup = rules.dedup() && !quiet ? NearDuplicateIndex.get() : null;
+        this.page = dedup != null ? dedup.beginPage() : 0;
+        this.weights = dedup != null ? new int[64] : null;
+        account(in.length + out.length + element.length + lastDropped.length);
+    }
+
+    /**
+     * Memory consumer for the buffers of streams in flight
+     * They are released when each stream ends, so trimming has nothing to take
+     */
+    public static final MemoryGovernor.Consumer BUFFER_CONSUMER = new MemoryGovernor.Consumer() {
+        @Override
+        public String name() {
+            return "stream_buffers";
+        }
+
+        @Override
+        public long estimatedBytes() {
+            return liveBufferBytes.get();
+        }
+
+        @Override
+        public void trimTo(long maxBytes) {
+        }
+    };
+
+    /**
+     * Whether a body was emitted by a completed stream, forgetting it if so
+     * Each emitted body matches once; unmatched fingerprints age out of a small ring.
+     *
+     * @param body The body as decoded from the stream's UTF-8 output.
+     */
+    public static boolean consumeEmitted(String body) {
+        synchronized (recentHashes) {
+            if (recentCount == 0) return false;
+        }
+        FastHash.Stream stream = new FastHash.Stream().update(body);
+        long hash = stream.value();
+        int length = stream.length();
+        synchronized (recentHashes) {
+            for (int i = 0; i < RECENT_BODIES; i++) {
+                if (recentLengths[i] == length && recentHashes[i] == hash && length > 0) {
+                    recentLengths[i] = 0;
+                    recentCount--;
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static void rememberEmitted(long hash, int length) {
+        if (length == 0) return;
+        synchronized (recentHashes) {
+            if (recentLengths[recentNext] == 0) recentCount++;
+            recentHashes[recentNext] = hash;
+            recentLengths[recentNext] = length;
+            recentNext = (recentNext + 1) % RECENT_BODIES;
+        }
+    }
+
+    /**
+     * Rows seen and dropped so far
+     */
+    public FilterStats stats() {
+        return stats;
+    }
+
+    @Override
+    public int read() throws IOException {
+        int n = read(single, 0, 1);
+        return n < 0 ? -1 : single[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) return 0;
+        while (outPos == outLen) {
+            if (!fill()) return -1;
+        }
+        int n = Math.min(len, outLen - outPos);
+        System.arraycopy(out, outPos, b, off, n);
+        outPos += n;
+        return n;
+    }
+
+    @Override
+    public void close() throws IOException {
+        releaseBuffers();
+        source.close();
+    }
+
+    /**
+     * Transform the next chunk of input into output
+     *
+     * @return false once the source is exhausted and all output was delivered.
+     */
+    private boolean fill() throws IOException {
+        outPos = 0;
+        outLen = 0;
+        if (inPos == inLen) {
+            if (sourceDone) return false;
+            int n = source.read(in, 0, in.length);
+            if (n < 0) {
+                sourceDone = true;
+                finish();
+                releaseBuffers();
+                if (!stats.quiet) rememberEmitted(digest.value(), digest.length());
+                return outLen > 0;
+            }
+            inPos = 0;
+            inLen = n;
+        }
+
+        if (state == State.TAIL) {
+            emit(in, inPos, inLen - inPos);
+            inPos = inLen;
+            return true;
+        }
+
+        while (inPos < inLen && state != State.TAIL) {
+            byte c = in[inPos++];
+            if (state == State.HEADER) {
+                header(c);
+            } else {
+                rows(c);
+            }
+        }
+        if (state == State.TAIL && inPos < inLen) {
+            emit(in, inPos, inLen - inPos);
+            inPos = inLen;
+        }
+        return true;
+    }
+
+    private void header(byte c) {
+        emit(c);
+        if (inString) {
+            if (escape) {
+                escape = false;
+            } else if (c == '\\') {
+                escape = true;
+            } else if (c == '"') {
+                inString = false;
+                capturingKey = false;
+            } else if (capturingKey) {
+                if (keyLen < key.length) key[keyLen] = c;
+                keyLen++;
+            }
+            return;
+        }
+
+        switch (c) {
+            case '"':
+                inString = true;
+                capturingKey = expectKey;
+                keyLen = 0;
+                if (!expectKey) pendingKey = 0;
+                break;
+
+            case ':':
+                expectKey = false;
+                pendingKey = 0;
+                if (depth == 1 && keyIs("data")) {
+                    pendingKey = 1;
+                } else if (depth == 2 && dataDepth == 2 && keyIs("rows")) {
+                    pendingKey = 2;
+                }
+                break;
+
+            case '{':
+            case '[':
+                if (depth + 1 >= MAX_DEPTH) {
+                    state = State.TAIL;
+                    return;
+                }
+                depth++;
+                objectAtDepth[depth] = c == '{';
+                expectKey = c == '{';
+                if (c == '{' && pendingKey == 1) {
+                    dataDepth = depth;
+                } else if (c == '[' && pendingKey == 2) {
+                    state = State.ROWS;
+                }
+                pendingKey = 0;
+                break;
+
+            case '}':
+            case ']':
+                depth--;
+                expectKey = false;
+                if (depth < dataDepth) dataDepth = -1;
+                break;
+
+            case ',':
+                expectKey = depth > 0 && objectAtDepth[depth];
+                break;
+
+            case ' ':
+            case '\n':
+            case '\r':
+            case '\t':
+                break;
+
+            default:
+                pendingKey = 0;
+                break;
+        }
+    }
+
+    private void rows(byte c) {
+        if (elementLen == 0) {
+            // Between elements
+            if (c == ' ' || c == '\n' || c == '\r' || c == '\t' || c == ',') return;
+            if (c == ']') {
+                endRows();
+                return;
+            }
+            elementIsContainer = c == '{' || c == '[';
+            elementDepth = 0;
+            inString = false;
+            escape = false;
+        }
+
+        if (!elementIsContainer && !inString && (c == ',' || c == ']')) {
+            // End of a scalar element; the delimiter belongs to the array
+            completeElement();
+            if (c == ']') endRows();
+            return;
+        }
+
+        append(c);
+        if (inString) {
+            if (escape) {
+                escape = false;
+            } else if (c == '\\') {
+                escape = true;
+            } else if (c == '"') {
+                inString = false;
+            }
+        } else if (c == '"') {
+            inString = true;
+        } else if (c == '{' || c == '[') {
+            elementDepth++;
+        } else if ((c == '}' || c == ']') && --elementDepth == 0 && elementIsContainer) {
+            completeElement();
+        }
+    }
+
+    private void completeElement() {
+        stats.rows++;
+        String reason = null;
+        if (elementIsContainer && element[0] == '{') {
+            try {
+                reason = evaluate();
+            } catch (RuntimeException e) {
+                // A bug in one rule or lookup must not break the body; keep the row as it came
+                reason = null;
+                if (!stats.quiet) {
+                    Metrics.increment("bytefilter.row_errors");
+                    Logger.error("Error checking row, keeping it", e);
+                }
+            }
+        }
+
+        if (reason == null) {
+            if (kept > 0) emit((byte) ',');
+            emit(element, 0, elementLen);
+            kept++;
+        } else {
+            stats.dropped++;
+            if (!stats.quiet) Logger.logDroppedArticle(row.title, String.valueOf(row.articleId), "ByteFilter[" + reason + "]");
+            // Keep the bytes in case every row ends up dropped
+            byte[] swap = lastDropped;
+            lastDropped = element;
+            lastDroppedLen = elementLen;
+            element = swap;
+        }
+        elementLen = 0;
+        inString = false;
+    }
+
+    /**
+     * Check the buffered row object against the rules and the duplicate window
+     *
+     * @return The reason to drop the row, or null to keep it.
+     */
+    private String evaluate() {
+        if (!JsonRowScanner.scan(element, elementLen, row, withPriceFields, dedup != null || Config.DEBUG_MODE)) {
+            if (!stats.quiet) Metrics.increment("bytefilter.malformed_rows");
+            return null;
+        }
+        String reason = rules.check(row);
+        // Rows already emitted cannot be retracted, so a better later copy does not replace them
+        if (reason == null && dedup != null
+                && dedup.offer(row, page, -1, weights) == NearDuplicateIndex.DROP) {
+            reason = "duplicate";
+        }
+        return reason;
+    }
+
+    private void endRows() {
+        if (kept == 0 && lastDroppedLen > 0) {
+            emit(lastDropped, 0, lastDroppedLen);
+            if (!stats.quiet) Logger.info("All articles dropped, keeping the last one to prevent UI issues");
+        }
+        emit((byte) ']');
+        state = State.TAIL;
+        if (stats.quiet) return;
+        Metrics.add("bytefilter.rows", stats.rows);
+        Metrics.add("bytefilter.dropped", stats.dropped);
+        if (stats.dropped > 0) {
+            Logger.info(String.format("Filtered body bytes: %d dropped, %d kept", stats.dropped, kept));
+        }
+    }
+
+    /**
+     * Body ended inside data.rows: pass the partial element through unchanged
+     */
+    private void finish() {
+        if (state == State.ROWS && elementLen > 0) {
+            if (kept > 0) emit((byte) ',');
+            emit(element, 0, elementLen);
+            elementLen = 0;
+        }
+        state = State.TAIL;
+    }
+
+    private void append(byte c) {
+        if (elementLen == element.length) {
+            account(element.length);
+            element = Arrays.copyOf(element, element.length * 2);
+        }
+        element[elementLen++] = c;
+    }
+
+    private void emit(byte c) {
+        ensureOut(1);
+        out[outLen++] = c;
+        digest(c);
+    }
+
+    private void emit(byte[] b, int off, int len) {
+        ensureOut(len);
+        System.arraycopy(b, off, out, outLen, len);
+        outLen += len;
+        for (int i = off; i < off + len; i++) {
+            digest(b[i]);
+        }
+    }
+
+    /**
+     * Decode one output byte as UTF-8 and hash the resulting chars
+     * Malformed sequences hash differently from the app's decoder, which only costs a second filter pass
+     */
+    private void digest(byte c) {
+        if (continuationBytes > 0 && (c & 0xc0) == 0x80) {
+            codePoint = codePoint << 6 | (c & 0x3f);
+            if (--continuationBytes > 0) return;
+        } else if (c >= 0) {
+            codePoint = c;
+            continuationBytes = 0;
+        } else if ((c & 0xe0) == 0xc0) {
+            codePoint = c & 0x1f;
+            continuationBytes = 1;
+            return;
+        } else if ((c & 0xf0) == 0xe0) {
+            codePoint = c & 0x0f;
+            continuationBytes = 2;
+            return;
+        } else if ((c & 0xf8) == 0xf0) {
+            codePoint = c & 0x07;
+            continuationBytes = 3;
+            return;
+        } else {
+            codePoint = 0xfffd;
+            continuationBytes = 0;
+        }
+
+        if (codePoint >= 0x10000) {
+            digest.update(Character.highSurrogate(codePoint));
+            digest.update(Character.lowSurrogate(codePoint));
+        } else {
+            digest.update((char) codePoint);
+        }
+    }
+
+    private void ensureOut(int extra) {
+        if (outLen + extra > out.length) {
+            int grown = out.length;
+            out = Arrays.copyOf(out, Math.max(out.length * 2, outLen + extra));
+            account(out.length - grown);
+        }
+    }
+
+    private void account(long bytes) {
+        if (buffersReleased) return;
+        bufferBytes += bytes;
+        liveBufferBytes.addAndGet(bytes);
+    }
+
+    /**
+     * Stop counting this stream's buffers once its body is complete or the stream is closed
+     */
+    private void releaseBuffers() {
+        if (buffersReleased) return;
+        buffersReleased = true;
+        liveBufferBytes.addAndGet(-bufferBytes);
+    }
+
+    private boolean keyIs(String name) {
+        if (keyLen != name.length()) return false;
+        for (int i = 0; i < keyLen; i++) {
+            if (key[i] != name.charAt(i)) return false;
+        }
+        return true;
+    }
+}
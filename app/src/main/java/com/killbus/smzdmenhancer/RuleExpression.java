@@ -0,0 +1,440 @@
+package com.killbus.smzdmenhancer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A compiled RULE_EXPRESSION
+ *
+ * The expression is parsed and constant-folded once by RuleParser, then
+ * flattened into an int array of 4-int instructions (opcode, destination,
+ * operand a, operand b) over separate int and double register files.
+ * Booleans live in int registers as 0/1; conditions compile to fused
+ * compare-and-jump instructions so && and || short-circuit. Evaluating a
+ * row is a single loop over the array with no allocation, boxing or reflection.
+ */
+public class RuleExpression {
+    // Loads: a = field index
+    private static final int LOAD_I = 0;
+    private static final int LOAD_D = 1;
+    private static final int I2D = 2;
+    private static final int MOVE_I = 3;
+    private static final int NEG_I = 4;
+    private static final int NEG_D = 5;
+    private static final int NOT = 6;
+    private static final int ADD_I = 7;
+    private static final int SUB_I = 8;
+    private static final int MUL_I = 9;
+    private static final int ADD_D = 10;
+    private static final int SUB_D = 11;
+    private static final int MUL_D = 12;
+    private static final int DIV_D = 13;
+    private static final int EQ_I = 14;
+    private static final int NE_I = 15;
+    private static final int LT_I = 16;
+    private static final int LE_I = 17;
+    private static final int EQ_D = 18;
+    private static final int NE_D = 19;
+    private static final int LT_D = 20;
+    private static final int LE_D = 21;
+    // Sets: b = index into intSets / doubleSets
+    private static final int IN_I = 22;
+    private static final int IN_D = 23;
+    private static final int MIN_I = 24;
+    private static final int MAX_I = 25;
+    private static final int MIN_D = 26;
+    private static final int MAX_D = 27;
+    private static final int WILSON = 28;
+    // Jumps: dst = target instruction offset, a = condition register
+    private static final int JUMP_IF_FALSE = 29;
+    private static final int JUMP_IF_TRUE = 30;
+    // Compare and jump: dst = target, jump if ints/doubles[a] <op> [b]
+    private static final int JUMP_EQ_I = 31;
+    private static final int JUMP_NE_I = 32;
+    private static final int JUMP_LT_I = 33;
+    private static final int JUMP_LE_I = 34;
+    private static final int JUMP_EQ_D = 35;
+    private static final int JUMP_NE_D = 36;
+    private static final int JUMP_LT_D = 37;
+    private static final int JUMP_LE_D = 38;
+    // Negated double compares, which differ from swapped operands when NaN is involved
+    private static final int JUMP_NOT_LT_D = 39;
+    private static final int JUMP_NOT_LE_D = 40;
+    // End evaluation with dst as the result
+    private static final int RETURN = 41;
+
+    private final String source;
+    private final int[] code;
+    private final int[][] intSets;
+    private final double[][] doubleSets;
+    private final boolean usesPriceFields;
+    private final int[] intTemplate;
+    private final double[] doubleTemplate;
+
+    private RuleExpression(String source, Compiler compiler) {
+        this.source = source;
+        this.code = Arrays.copyOf(compiler.code, compiler.length);
+        this.intSets = compiler.intSets.toArray(new int[0][]);
+        this.doubleSets = compiler.doubleSets.toArray(new double[0][]);
+        this.usesPriceFields = compiler.usesPriceFields;
+        // Constants get their own registers, copied into a row's frame once instead of per row
+        this.intTemplate = Arrays.copyOf(compiler.intConstants, compiler.intRegisters);
+        this.doubleTemplate = Arrays.copyOf(compiler.doubleConstants, compiler.doubleRegisters);
+    }
+
+    /**
+     * Parse and compile an expression
+     *
+     * @throws IllegalArgumentException if the expression is malformed.
+     */
+    public static RuleExpression compile(String source) {
+        RuleParser.Node root = RuleParser.parse(source);
+        Compiler compiler = new Compiler();
+        compiler.genProgram(root);
+        return new RuleExpression(source, compiler);
+    }
+
+    /**
+     * Whether the expression reads price, discount or historical_low
+     */
+    public boolean usesPriceFields() {
+        return usesPriceFields;
+    }
+
+    /**
+     * Number of instructions
+     */
+    public int size() {
+        return code.length / 4;
+    }
+
+    /**
+     * Evaluate the expression for a row
+     */
+    public boolean matches(ArticleRow row) {
+        if (row.frameOwner != this) {
+            // Rows are reused for a whole pass on one thread, so this runs once per pass
+            row.ints = intTemplate.clone();
+            row.doubles = doubleTemplate.clone();
+            row.frameOwner = this;
+        }
+        int[] ints = row.ints;
+        double[] doubles = row.doubles;
+        int[] code = this.code;
+
+        int pc = 0;
+        while (true) {
+            int op = code[pc];
+            int dst = code[pc + 1];
+            int a = code[pc + 2];
+            int b = code[pc + 3];
+            pc += 4;
+            switch (op) {
+                case LOAD_I: ints[dst] = loadInt(row, a); break;
+                case LOAD_D: doubles[dst] = loadDouble(row, a); break;
+                case I2D: doubles[dst] = ints[a]; break;
+                case MOVE_I: ints[dst] = ints[a]; break;
+                case NEG_I: ints[dst] = -ints[a]; break;
+                case NEG_D: doubles[dst] = -doubles[a]; break;
+                case NOT: ints[dst] = ints[a] ^ 1; break;
+                case ADD_I: ints[dst] = ints[a] + ints[b]; break;
+                case SUB_I: ints[dst] = ints[a] - ints[b]; break;
+                case MUL_I: ints[dst] = ints[a] * ints[b]; break;
+                case ADD_D: doubles[dst] = doubles[a] + doubles[b]; break;
+                case SUB_D: doubles[dst] = doubles[a] - doubles[b]; break;
+                case MUL_D: doubles[dst] = doubles[a] * doubles[b]; break;
+                case DIV_D: doubles[dst] = doubles[a] / doubles[b]; break;
+                case EQ_I: ints[dst] = ints[a] == ints[b] ? 1 : 0; break;
+                case NE_I: ints[dst] = ints[a] != ints[b] ? 1 : 0; break;
+                case LT_I: ints[dst] = ints[a] < ints[b] ? 1 : 0; break;
+                case LE_I: ints[dst] = ints[a] <= ints[b] ? 1 : 0; break;
+                case EQ_D: ints[dst] = doubles[a] == doubles[b] ? 1 : 0; break;
+                case NE_D: ints[dst] = doubles[a] != doubles[b] ? 1 : 0; break;
+                case LT_D: ints[dst] = doubles[a] < doubles[b] ? 1 : 0; break;
+                case LE_D: ints[dst] = doubles[a] <= doubles[b] ? 1 : 0; break;
+                case IN_I: ints[dst] = contains(intSets[b], ints[a]) ? 1 : 0; break;
+                // + 0.0 turns -0.0 into 0.0, which binarySearch would otherwise treat as different
+                case IN_D: ints[dst] = Arrays.binarySearch(doubleSets[b], doubles[a] + 0.0) >= 0 ? 1 : 0; break;
+                case MIN_I: ints[dst] = Math.min(ints[a], ints[b]); break;
+                case MAX_I: ints[dst] = Math.max(ints[a], ints[b]); break;
+                case MIN_D: doubles[dst] = Math.min(doubles[a], doubles[b]); break;
+                case MAX_D: doubles[dst] = Math.max(doubles[a], doubles[b]); break;
+                case WILSON: doubles[dst] = RuleParser.wilson(doubles[a], doubles[b]); break;
+                case JUMP_IF_FALSE: if (ints[a] == 0) pc = dst; break;
+                case JUMP_IF_TRUE: if (ints[a] != 0) pc = dst; break;
+                case JUMP_EQ_I: if (ints[a] == ints[b]) pc = dst; break;
+                case JUMP_NE_I: if (ints[a] != ints[b]) pc = dst; break;
+                case JUMP_LT_I: if (ints[a] < ints[b]) pc = dst; break;
+                case JUMP_LE_I: if (ints[a] <= ints[b]) pc = dst; break;
+                case JUMP_EQ_D: if (doubles[a] == doubles[b]) pc = dst; break;
+                case JUMP_NE_D: if (doubles[a] != doubles[b]) pc = dst; break;
+                case JUMP_LT_D: if (doubles[a] < doubles[b]) pc = dst; break;
+                case JUMP_LE_D: if (doubles[a] <= doubles[b]) pc = dst; break;
+                case JUMP_NOT_LT_D: if (!(doubles[a] < doubles[b])) pc = dst; break;
+                case JUMP_NOT_LE_D: if (!(doubles[a] <= doubles[b])) pc = dst; break;
+                case RETURN: return dst != 0;
+                default: throw new IllegalStateException("Bad opcode " + op);
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return source;
+    }
+
+    private static int loadInt(ArticleRow row, int field) {
+        switch (field) {
+            case 0: return row.commentCount;
+            case 1: return row.worthy;
+            case 2: return row.unworthy;
+            case 3: return row.channelId;
+            default: return row.historicalLow ? 1 : 0;
+        }
+    }
+
+    private static double loadDouble(ArticleRow row, int field) {
+        if (field == 5) {
+            return row.priceCents < 0 ? -1 : row.priceCents / 100.0;
+        }
+        return row.discountTenths < 0 ? -1 : row.discountTenths / 10.0;
+    }
+
+    private static boolean contains(int[] set, int value) {
+        if (set.length > 8) return Arrays.binarySearch(set, value) >= 0;
+        for (int v : set) {
+            if (v == value) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Flattens a RuleParser tree
+     *
+     * Conditions are compiled as compare-and-jump instructions that short-circuit
+     * straight to the result; values get their own registers, and constants are
+     * placed in registers up front so they cost no instruction.
+     */
+    private static final class Compiler {
+        int[] code = new int[64];
+        int length;
+        int intRegisters;
+        int doubleRegisters;
+        int[] intConstants = new int[8];
+        double[] doubleConstants = new double[8];
+        boolean usesPriceFields;
+        final List<int[]> intSets = new ArrayList<>();
+        final List<double[]> doubleSets = new ArrayList<>();
+
+        void genProgram(RuleParser.Node root) {
+            List<Integer> onFalse = new ArrayList<>();
+            genBranch(root, false, onFalse);
+            emit(RETURN, 1, 0, 0);
+            patch(onFalse, length);
+            emit(RETURN, 0, 0, 0);
+        }
+
+        /**
+         * Emit code that jumps when the condition evaluates to {@code when} and falls through otherwise
+         *
+         * @param jumps Receives the offsets of jump instructions to patch with the target.
+         */
+        void genBranch(RuleParser.Node node, boolean when, List<Integer> jumps) {
+            switch (node.op) {
+                case "&&":
+                case "||": {
+                    boolean and = "&&".equals(node.op);
+                    if (when != and) {
+                        // && jumping on false, || jumping on true: either operand decides
+                        genBranch(node.left, when, jumps);
+                        genBranch(node.right, when, jumps);
+                    } else {
+                        List<Integer> skip = new ArrayList<>();
+                        genBranch(node.left, !when, skip);
+                        genBranch(node.right, when, jumps);
+                        patch(skip, length);
+                    }
+                    return;
+                }
+
+                case "!":
+                    genBranch(node.left, !when, jumps);
+                    return;
+
+                case "==":
+                case "!=":
+                case "<":
+                case "<=": {
+                    int a = gen(node.left);
+                    int b = gen(node.right);
+                    jumps.add(length);
+                    if (node.left.type == RuleParser.DOUBLE) {
+                        emit(doubleCompareJump(node.op, when), 0, a, b);
+                    } else if (when || "==".equals(node.op) || "!=".equals(node.op)) {
+                        emit(intCompareJump(node.op, when), 0, a, b);
+                    } else {
+                        // !(a < b) is b <= a and !(a <= b) is b < a
+                        emit("<".equals(node.op) ? JUMP_LE_I : JUMP_LT_I, 0, b, a);
+                    }
+                    return;
+                }
+
+                default: {
+                    int value = gen(node);
+                    jumps.add(length);
+                    emit(when ? JUMP_IF_TRUE : JUMP_IF_FALSE, 0, value, 0);
+                }
+            }
+        }
+
+        /**
+         * Emit code that computes the node into a register
+         *
+         * @return The register, int or double depending on the node type.
+         */
+        int gen(RuleParser.Node node) {
+            boolean isDouble = node.type == RuleParser.DOUBLE;
+            switch (node.op) {
+                case "const":
+                    return isDouble ? doubleConstant(node.value) : intConstant((int) node.value);
+
+                case "field":
+                    if (node.field >= RuleParser.FIRST_PRICE_FIELD) usesPriceFields = true;
+                    return isDouble
+                        ? emit(LOAD_D, doubleRegisters++, node.field, 0)
+                        : emit(LOAD_I, intRegisters++, node.field, 0);
+
+                case "i2d":
+                    return emit(I2D, doubleRegisters++, gen(node.left), 0);
+
+                case "neg":
+                    return isDouble
+                        ? emit(NEG_D, doubleRegisters++, gen(node.left), 0)
+                        : emit(NEG_I, intRegisters++, gen(node.left), 0);
+
+                case "!":
+                    return emit(NOT, intRegisters++, gen(node.left), 0);
+
+                case "&&":
+                case "||": {
+                    int result = intRegisters++;
+                    emit(MOVE_I, result, gen(node.left), 0);
+                    int jump = length;
+                    emit("&&".equals(node.op) ? JUMP_IF_FALSE : JUMP_IF_TRUE, 0, result, 0);
+                    emit(MOVE_I, result, gen(node.right), 0);
+                    code[jump + 1] = length;
+                    return result;
+                }
+
+                case "in":
+                    return genIn(node);
+
+                default:
+                    return genBinary(node);
+            }
+        }
+
+        private int genIn(RuleParser.Node node) {
+            if (node.left.type == RuleParser.INT && isIntegral(node.set)) {
+                int[] set = new int[node.set.length];
+                for (int i = 0; i < set.length; i++) {
+                    set[i] = (int) node.set[i];
+                }
+                intSets.add(set);
+                return emit(IN_I, intRegisters++, gen(node.left), intSets.size() - 1);
+            }
+            int operand = gen(node.left);
+            if (node.left.type == RuleParser.INT) {
+                operand = emit(I2D, doubleRegisters++, operand, 0);
+            }
+            doubleSets.add(node.set);
+            return emit(IN_D, intRegisters++, operand, doubleSets.size() - 1);
+        }
+
+        private int genBinary(RuleParser.Node node) {
+            int a = gen(node.left);
+            int b = gen(node.right);
+            // Operands of one node always share a type; BOOL compares like INT
+            boolean doubleOperands = node.left.type == RuleParser.DOUBLE;
+            int op;
+            switch (node.op) {
+                case "+": op = doubleOperands ? ADD_D : ADD_I; break;
+                case "-": op = doubleOperands ? SUB_D : SUB_I; break;
+                case "*": op = doubleOperands ? MUL_D : MUL_I; break;
+                case "/": op = DIV_D; break;
+                case "==": op = doubleOperands ? EQ_D : EQ_I; break;
+                case "!=": op = doubleOperands ? NE_D : NE_I; break;
+                case "<": op = doubleOperands ? LT_D : LT_I; break;
+                case "<=": op = doubleOperands ? LE_D : LE_I; break;
+                case "min": op = doubleOperands ? MIN_D : MIN_I; break;
+                case "max": op = doubleOperands ? MAX_D : MAX_I; break;
+                case "wilson": op = WILSON; break;
+                default: throw new IllegalArgumentException("Cannot compile '" + node.op + "'");
+            }
+            int dst = node.type == RuleParser.DOUBLE ? doubleRegisters++ : intRegisters++;
+            return emit(op, dst, a, b);
+        }
+
+        private static int intCompareJump(String op, boolean when) {
+            switch (op) {
+                case "==": return when ? JUMP_EQ_I : JUMP_NE_I;
+                case "!=": return when ? JUMP_NE_I : JUMP_EQ_I;
+                case "<": return JUMP_LT_I;
+                default: return JUMP_LE_I;
+            }
+        }
+
+        private static int doubleCompareJump(String op, boolean when) {
+            switch (op) {
+                case "==": return when ? JUMP_EQ_D : JUMP_NE_D;
+                case "!=": return when ? JUMP_NE_D : JUMP_EQ_D;
+                case "<": return when ? JUMP_LT_D : JUMP_NOT_LT_D;
+                default: return when ? JUMP_LE_D : JUMP_NOT_LE_D;
+            }
+        }
+
+        private int intConstant(int value) {
+            int register = intRegisters++;
+            if (register >= intConstants.length) {
+                // Field loads and temporaries also take registers, so one doubling may not be enough
+                intConstants = Arrays.copyOf(intConstants, Math.max(intConstants.length * 2, register + 1));
+            }
+            intConstants[register] = value;
+            return register;
+        }
+
+        private int doubleConstant(double value) {
+            int register = doubleRegisters++;
+            if (register >= doubleConstants.length) {
+                doubleConstants = Arrays.copyOf(doubleConstants, Math.max(doubleConstants.length * 2, register + 1));
+            }
+            doubleConstants[register] = value;
+            return register;
+        }
+
+        private void patch(List<Integer> jumps, int target) {
+            for (int jump : jumps) {
+                code[jump + 1] = target;
+            }
+        }
+
+        private int emit(int op, int dst, int a, int b) {
+            if (length + 4 > code.length) {
+                code = Arrays.copyOf(code, code.length * 2);
+            }
+            code[length++] = op;
+            code[length++] = dst;
+            code[length++] = a;
+            code[length++] = b;
+            return dst;
+        }
+
+        private static boolean isIntegral(double[] values) {
+            for (double value : values) {
+                if (value != (int) value) return false;
+            }
+            return true;
+        }
+    }
+}
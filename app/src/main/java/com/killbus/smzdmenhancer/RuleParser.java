@@ -0,0 +1,459 @@
+package com.killbus.smzdmenhancer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Parser for RULE_EXPRESSION, producing a typed and constant-folded tree
+ *
+ * Grammar, loosest binding first:
+ *   or      := and ('||' and)*
+ *   and     := compare ('&&' compare)*
+ *   compare := sum (('==' | '!=' | '<' | '<=' | '>' | '>=') sum | 'in' '{' number (',' number)* '}')?
+ *   sum     := product (('+' | '-') product)*
+ *   product := unary (('*' | '/') unary)*
+ *   unary   := ('!' | '-') unary | number | 'true' | 'false' | field | name '(' or (',' or)* ')' | '(' or ')'
+ */
+class RuleParser {
+    static final int INT = 0;
+    static final int DOUBLE = 1;
+    static final int BOOL = 2;
+
+    // Fields a rule can read; the index is the operand of the load instructions
+    static final String[] FIELDS = {
+        "comments", "worthy", "unworthy", "channel", "historical_low", "price", "discount"
+    };
+    static final int[] FIELD_TYPES = { INT, INT, INT, INT, BOOL, DOUBLE, DOUBLE };
+    static final int FIRST_PRICE_FIELD = 4;
+
+    // Deepest nesting and longest operator chain accepted; the compiler recurses once per level
+    static final int MAX_DEPTH = 128;
+
+    /**
+     * Expression tree node
+     * op is one of: const, field, neg, !, i2d, + - * /, comparisons, &&, ||, in, wilson, min, max
+     */
+    static final class Node {
+        final String op;
+        final int type;
+        final Node left;
+        final Node right;
+        final double value;
+        final int field;
+        final double[] set;
+        final int depth;
+
+        Node(String op, int type, Node left, Node right, double value, int field, double[] set) {
+            this.op = op;
+            this.type = type;
+            this.left = left;
+            this.right = right;
+            this.value = value;
+            this.field = field;
+            this.set = set;
+            this.depth = 1 + Math.max(left == null ? 0 : left.depth, right == null ? 0 : right.depth);
+        }
+
+        boolean isConst() {
+            return "const".equals(op);
+        }
+    }
+
+    private final String source;
+    private int pos;
+    private String token;
+    private int tokenStart;
+    private int nesting;
+
+    private RuleParser(String source) {
+        this.source = source;
+    }
+
+    /**
+     * Parse a boolean expression
+     *
+     * @throws IllegalArgumentException if the expression is malformed or not boolean.
+     */
+    static Node parse(String source) {
+        RuleParser parser = new RuleParser(source);
+        parser.next();
+        Node root = parser.or();
+        if (parser.token != null) {
+            throw parser.error("Unexpected '" + parser.token + "'");
+        }
+        if (root.type != BOOL) {
+            throw new IllegalArgumentException("Rule expression must be a condition: " + source);
+        }
+        return root;
+    }
+
+    private Node or() {
+        Node node = and();
+        while ("||".equals(token)) {
+            next();
+            node = limit(logical("||", node, and()));
+        }
+        return node;
+    }
+
+    private Node and() {
+        Node node = compare();
+        while ("&&".equals(token)) {
+            next();
+            node = limit(logical("&&", node, compare()));
+        }
+        return node;
+    }
+
+    private Node compare() {
+        Node node = sum();
+        if ("in".equals(token)) {
+            next();
+            return in(node, set());
+        }
+        if ("==".equals(token) || "!=".equals(token) || "<".equals(token)
+                || "<=".equals(token) || ">".equals(token) || ">=".equals(token)) {
+            String op = token;
+            next();
+            return comparison(op, node, sum());
+        }
+        return node;
+    }
+
+    private Node sum() {
+        Node node = product();
+        while ("+".equals(token) || "-".equals(token)) {
+            String op = token;
+            next();
+            node = limit(arithmetic(op, node, product()));
+        }
+        return node;
+    }
+
+    private Node product() {
+        Node node = unary();
+        while ("*".equals(token) || "/".equals(token)) {
+            String op = token;
+            next();
+            node = limit(arithmetic(op, node, unary()));
+        }
+        return node;
+    }
+
+    private Node unary() {
+        // Parentheses, calls and prefix operators recurse here without always adding a node
+        if (++nesting > MAX_DEPTH) {
+            throw error("Expression nested deeper than " + MAX_DEPTH);
+        }
+        Node node = limit(operand());
+        nesting--;
+        return node;
+    }
+
+    private Node operand() {
+        if (token == null) {
+            throw error("Unexpected end of expression");
+        }
+        String t = token;
+        if ("!".equals(t)) {
+            next();
+            Node operand = unary();
+            expect(operand, BOOL, "!");
+            if (operand.isConst()) return constant(BOOL, operand.value != 0 ? 0 : 1);
+            return new Node("!", BOOL, operand, null, 0, -1, null);
+        }
+        if ("-".equals(t)) {
+            next();
+            Node operand = unary();
+            expectNumber(operand, "-");
+            if (operand.isConst()) {
+                // Negate ints as ints so Integer.MIN_VALUE wraps like it does at run time
+                return constant(operand.type, operand.type == INT ? -(int) operand.value : -operand.value);
+            }
+            return new Node("neg", operand.type, operand, null, 0, -1, null);
+        }
+        if ("(".equals(t)) {
+            next();
+            Node node = or();
+            consume(")");
+            return node;
+        }
+        if (isNumber(t)) {
+            next();
+            return number(t);
+        }
+        if ("true".equals(t) || "false".equals(t)) {
+            next();
+            return constant(BOOL, "true".equals(t) ? 1 : 0);
+        }
+        if (!Character.isLetter(t.charAt(0)) && t.charAt(0) != '_') {
+            throw error("Unexpected '" + t + "'");
+        }
+
+        int nameStart = tokenStart;
+        next();
+        if ("(".equals(token)) {
+            next();
+            List<Node> args = new ArrayList<>();
+            if (!")".equals(token)) {
+                args.add(or());
+                while (",".equals(token)) {
+                    next();
+                    args.add(or());
+                }
+            }
+            consume(")");
+            return call(t, args, nameStart);
+        }
+        int field = Arrays.asList(FIELDS).indexOf(t);
+        if (field < 0) {
+            throw error("Unknown field '" + t + "'", nameStart);
+        }
+        return new Node("field", FIELD_TYPES[field], null, null, 0, field, null);
+    }
+
+    private double[] set() {
+        consume("{");
+        List<Double> values = new ArrayList<>();
+        do {
+            if (!values.isEmpty()) next();
+            boolean negative = "-".equals(token);
+            if (negative) next();
+            if (token == null || !isNumber(token)) {
+                throw error("Expected a number in set");
+            }
+            double value = Double.parseDouble(token);
+            // -0 is stored as 0 so sorted lookups find it
+            values.add(negative ? 0.0 - value : value);
+            next();
+        } while (",".equals(token));
+        consume("}");
+
+        double[] set = new double[values.size()];
+        for (int i = 0; i < set.length; i++) {
+            set[i] = values.get(i);
+        }
+        Arrays.sort(set);
+        return set;
+    }
+
+    // ========== Typed node construction with constant folding ==========
+
+    private Node logical(String op, Node left, Node right) {
+        expect(left, BOOL, op);
+        expect(right, BOOL, op);
+        boolean and = "&&".equals(op);
+        // Operands have no side effects, so a constant on either side decides or drops out:
+        // true && x -> x, false && x -> false, x && true -> x, x && false -> false, and the mirror for ||
+        if (left.isConst()) {
+            return (left.value != 0) == and ? right : left;
+        }
+        if (right.isConst()) {
+            return (right.value != 0) == and ? left : right;
+        }
+        return new Node(op, BOOL, left, right, 0, -1, null);
+    }
+
+    private Node comparison(String op, Node left, Node right) {
+        boolean equality = "==".equals(op) || "!=".equals(op);
+        if (!(equality && left.type == BOOL && right.type == BOOL)) {
+            expectNumber(left, op);
+            expectNumber(right, op);
+        }
+        if (left.type != right.type) {
+            left = toDouble(left);
+            right = toDouble(right);
+        }
+        // a > b is compiled as b < a
+        if (">".equals(op) || ">=".equals(op)) {
+            Node swap = left;
+            left = right;
+            right = swap;
+            op = ">".equals(op) ? "<" : "<=";
+        }
+        if (left.isConst() && right.isConst()) {
+            return constant(BOOL, compareConst(op, left.value, right.value) ? 1 : 0);
+        }
+        return new Node(op, BOOL, left, right, 0, -1, null);
+    }
+
+    private Node arithmetic(String op, Node left, Node right) {
+        expectNumber(left, op);
+        expectNumber(right, op);
+        int type = left.type == INT && right.type == INT && !"/".equals(op) ? INT : DOUBLE;
+        if (type == DOUBLE) {
+            left = toDouble(left);
+            right = toDouble(right);
+        }
+        if (left.isConst() && right.isConst()) {
+            return constant(type, arithmeticConst(op, type, left.value, right.value));
+        }
+        return new Node(op, type, left, right, 0, -1, null);
+    }
+
+    private Node in(Node left, double[] set) {
+        expectNumber(left, "in");
+        if (left.isConst()) {
+            return constant(BOOL, Arrays.binarySearch(set, left.value + 0.0) >= 0 ? 1 : 0);
+        }
+        return new Node("in", BOOL, left, null, 0, -1, set);
+    }
+
+    private Node call(String name, List<Node> args, int position) {
+        if (!"wilson".equals(name) && !"min".equals(name) && !"max".equals(name)) {
+            throw error("Unknown function '" + name + "'", position);
+        }
+        if (args.size() != 2) {
+            throw error(name + "() takes 2 arguments", position);
+        }
+        Node left = args.get(0);
+        Node right = args.get(1);
+        expectNumber(left, name);
+        expectNumber(right, name);
+        int type = "wilson".equals(name) || left.type != right.type ? DOUBLE : left.type;
+        if (type == DOUBLE) {
+            left = toDouble(left);
+            right = toDouble(right);
+        }
+        if (left.isConst() && right.isConst()) {
+            double value = "wilson".equals(name) ? wilson(left.value, right.value)
+                : "min".equals(name) ? Math.min(left.value, right.value)
+                : Math.max(left.value, right.value);
+            return constant(type, value);
+        }
+        return new Node(name, type, left, right, 0, -1, null);
+    }
+
+    private static Node toDouble(Node node) {
+        if (node.type == DOUBLE) return node;
+        if (node.isConst()) return constant(DOUBLE, node.value);
+        return new Node("i2d", DOUBLE, node, null, 0, -1, null);
+    }
+
+    private static Node constant(int type, double value) {
+        return new Node("const", type, null, null, value, -1, null);
+    }
+
+    private Node number(String text) {
+        if (text.indexOf('.') >= 0) {
+            return constant(DOUBLE, Double.parseDouble(text));
+        }
+        try {
+            return constant(INT, Integer.parseInt(text));
+        } catch (NumberFormatException e) {
+            throw error("Number out of range: " + text);
+        }
+    }
+
+    static boolean compareConst(String op, double a, double b) {
+        switch (op) {
+            case "==": return a == b;
+            case "!=": return a != b;
+            case "<": return a < b;
+            default: return a <= b;
+        }
+    }
+
+    private static double arithmeticConst(String op, int type, double a, double b) {
+        if (type == INT) {
+            int x = (int) a;
+            int y = (int) b;
+            switch (op) {
+                case "+": return x + y;
+                case "-": return x - y;
+                default: return x * y;
+            }
+        }
+        switch (op) {
+            case "+": return a + b;
+            case "-": return a - b;
+            case "*": return a * b;
+            default: return a / b;
+        }
+    }
+
+    /**
+     * Lower bound of the 95% Wilson score interval for positive/negative votes
+     * 0 when there are no votes
+     */
+    static double wilson(double positive, double negative) {
+        double n = positive + negative;
+        if (n <= 0) return 0;
+        double z = 1.96;
+        double p = positive / n;
+        double z2 = z * z;
+        return (p + z2 / (2 * n) - z * Math.sqrt((p * (1 - p) + z2 / (4 * n)) / n)) / (1 + z2 / n);
+    }
+
+    // ========== Tokenizer ==========
+
+    private void next() {
+        while (pos < source.length() && Character.isWhitespace(source.charAt(pos))) pos++;
+        tokenStart = pos;
+        if (pos >= source.length()) {
+            token = null;
+            return;
+        }
+
+        char c = source.charAt(pos);
+        int end = pos + 1;
+        if (Character.isDigit(c) || (c == '.' && end < source.length() && Character.isDigit(source.charAt(end)))) {
+            while (end < source.length()
+                    && (Character.isDigit(source.charAt(end)) || source.charAt(end) == '.')) end++;
+        } else if (Character.isLetter(c) || c == '_') {
+            while (end < source.length()
+                    && (Character.isLetterOrDigit(source.charAt(end)) || source.charAt(end) == '_')) end++;
+        } else if (end < source.length() && isTwoCharOperator(c, source.charAt(end))) {
+            end++;
+        } else if ("!<>+-*/(){},".indexOf(c) < 0) {
+            throw error("Unexpected character '" + c + "'");
+        }
+        token = source.substring(pos, end);
+        pos = end;
+    }
+
+    private static boolean isTwoCharOperator(char a, char b) {
+        return (a == '&' && b == '&') || (a == '|' && b == '|')
+            || (b == '=' && (a == '=' || a == '!' || a == '<' || a == '>'));
+    }
+
+    private static boolean isNumber(String t) {
+        char c = t.charAt(0);
+        return Character.isDigit(c) || c == '.';
+    }
+
+    private void consume(String expected) {
+        if (!expected.equals(token)) {
+            throw error("Expected '" + expected + "'");
+        }
+        next();
+    }
+
+    private void expect(Node node, int type, String op) {
+        if (node.type != type) {
+            throw error("'" + op + "' needs a condition");
+        }
+    }
+
+    private void expectNumber(Node node, String op) {
+        if (node.type == BOOL) {
+            throw error("'" + op + "' needs a number");
+        }
+    }
+
+    private Node limit(Node node) {
+        if (node.depth > MAX_DEPTH) {
+            throw error("Expression nested deeper than " + MAX_DEPTH);
+        }
+        return node;
+    }
+
+    private IllegalArgumentException error(String message) {
+        return error(message, tokenStart);
+    }
+
+    private IllegalArgumentException error(String message, int position) {
+        return new IllegalArgumentException(message + " at position " + position + ": " + source);
+    }
+}
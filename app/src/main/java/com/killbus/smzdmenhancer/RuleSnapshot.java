@@ -0,0 +1,180 @@
+package com.killbus.smzdmenhancer;
+
+import com.killbus.smzdmenhancer.utils.Logger;
+
+import java.util.BitSet;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Immutable, precompiled view of the filter rules in Config
+ * Built once and shared by every row check; recompile after changing Config
+ */
+public class RuleSnapshot {
+    private static final AtomicInteger VERSIONS = new AtomicInteger();
+    private static volatile RuleSnapshot current;
+
+    /**
+     * Changes every time the rules are recompiled
+     */
+    public final int version;
+
+    private final int commentThreshold;
+    private final boolean hideSeen;
+    private final int minDiscountPercent;
+    private final boolean historicalLowOnly;
+    private final long maxPriceCents;
+    private final Config.MallFilterMode mallMode;
+    private final boolean dedup;
+    private final RuleExpression expression;
+    private final BitSet malls = new BitSet();
+
+    private RuleSnapshot() {
+        version = VERSIONS.incrementAndGet();
+        commentThreshold = Config.COMMENT_THRESHOLD;
+        hideSeen = Config.HIDE_SEEN_ARTICLES;
+        minDiscountPercent = Config.MIN_DISCOUNT_PERCENT;
+        historicalLowOnly = Config.HISTORICAL_LOW_ONLY;
+        maxPriceCents = Config.MAX_PRICE_YUAN * 100L;
+        mallMode = Config.MALL_FILTER_MODE;
+        dedup = Config.DEDUP_ENABLED;
+        expression = compileExpression(Config.RULE_EXPRESSION);
+
+        Iterable<String> mallNames = mallMode == Config.MallFilterMode.WHITELIST
+            ? Config.MALL_WHITELIST : Config.MALL_BLACKLIST;
+        if (mallMode != Config.MallFilterMode.DISABLED) {
+            for (String mall : mallNames) {
+                malls.set(MallRegistry.intern(mall));
+            }
+        }
+    }
+
+    private static RuleExpression compileExpression(String source) {
+        if (source == null || source.trim().isEmpty()) {
+            return null;
+        }
+        try {
+            RuleExpression compiled = RuleExpression.compile(source);
+            Logger.debug("Compiled rule expression to " + compiled.size() + " instructions: " + source);
+            return compiled;
+        } catch (IllegalArgumentException e) {
+            Logger.error("Invalid RULE_EXPRESSION, ignoring it", e);
+            return null;
+        } catch (RuntimeException e) {
+            // A compiler bug must not take the whole filter down with it
+            Logger.error("Failed to compile RULE_EXPRESSION, ignoring it", e);
+            return null;
+        }
+    }
+
+    /**
+     * The active snapshot, compiled on first use
+     */
+    public static RuleSnapshot current() {
+        RuleSnapshot snapshot = current;
+        if (snapshot == null) {
+            synchronized (RuleSnapshot.class) {
+                snapshot = current;
+                if (snapshot == null) {
+                    snapshot = new RuleSnapshot();
+                    current = snapshot;
+                }
+            }
+        }
+        return snapshot;
+    }
+
+    /**
+     * Rebuild the snapshot from the current Config values
+     */
+    public static synchronized RuleSnapshot recompile() {
+        current = new RuleSnapshot();
+        return current;
+    }
+
+    /**
+     * Whether any rule needs title, price or mall of a row
+     */
+    public boolean usesPriceFields() {
+        return minDiscountPercent > 0 || historicalLowOnly || maxPriceCents > 0
+            || mallMode != Config.MallFilterMode.DISABLED
+            || (expression != null && expression.usesPriceFields());
+    }
+
+    /**
+     * Whether rows have to be checked against the near-duplicate index
+     */
+    public boolean dedup() {
+        return dedup;
+    }
+
+    /**
+     * Whether any rule needs the row title
+     */
+    public boolean usesTitle() {
+        return dedup || usesPriceFields();
+    }
+
+    /**
+     * Whether a RULE_EXPRESSION is active
+     */
+    public boolean hasExpression() {
+        return expression != null;
+    }
+
+    /**
+     * Check a row against all rules
+     *
+     * @param row The row, read with price fields if usesPriceFields() is true.
+     * @return The reason to drop the row, or null to keep it.
+     */
+    public String check(ArticleRow row) {
+        if (row.commentCount < commentThreshold) {
+            return "comments:" + row.commentCount;
+        }
+
+        if (hideSeen) {
+            SeenArticleStore seenStore = SeenArticleStore.get();
+            if (seenStore != null && seenStore.contains(row.articleId)) {
+                return "seen";
+            }
+        }
+
+        if (maxPriceCents > 0 && row.priceCents > maxPriceCents) {
+            return "price:" + row.priceCents / 100;
+        }
+
+        if (minDiscountPercent > 0 && row.discountTenths > 0
+                && 100 - row.discountTenths < minDiscountPercent) {
+            return "discount:" + (100 - row.discountTenths) + "%";
+        }
+
+        if (historicalLowOnly && !row.historicalLow) {
+            return "not-historical-low";
+        }
+
+        switch (mallMode) {
+            case WHITELIST:
+                // Rows without a mall (e.g. 晒物) are not deals and are kept
+                boolean hasMall = row.mall != null && !row.mall.isEmpty();
+                if (hasMall && (row.mallId < 0 || !malls.get(row.mallId))) {
+                    return "mall:" + row.mall;
+                }
+                break;
+
+            case BLACKLIST:
+                if (row.mallId >= 0 && malls.get(row.mallId)) {
+                    return "mall:" + row.mall;
+                }
+                break;
+
+            case DISABLED:
+            default:
+                break;
+        }
+
+        if (expression != null && !expression.matches(row)) {
+            return "rule";
+        }
+        return null;
+    }
+}
@@ -0,0 +1,364 @@
+package com.killbus.smzdmenhancer;
+
+import com.killbus.smzdmenhancer.utils.LongHashSet;
+import com.killbus.smzdmenhancer.utils.MemoryGovernor;
+import com.killbus.smzdmenhancer.utils.Metrics;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Persistent set of article IDs the user has already opened
+ *
+ * On-disk layout:
+ * - seen.idx: header followed by an open-addressing table of longs (0 = empty slot),
+ *   memory-mapped read-only so lookups never load the table onto the heap
+ * - seen.log: append-only list of IDs added since the last compaction
+ *
+ * New IDs go into a small in-heap set and are appended to the log on a background
+ * thread. Once enough IDs are pending, the index is rebuilt in the background,
+ * atomically swapped in, and the log is truncated.
+ */
+public class SeenArticleStore implements MemoryGovernor.Consumer {
+    private static final String INDEX_FILE = "seen.idx";
+    private static final String LOG_FILE = "seen.log";
+    private static final int MAGIC = 0x53454e31; // "SEN1"
+    private static final int HEADER_BYTES = 16;
+
+    private static volatile SeenArticleStore shared;
+
+    private final File dir;
+    private final ExecutorService writer;
+    private final LongHashSet pending = new LongHashSet(256);
+
+    private volatile LongBuffer table;
+    private volatile int indexedCount;
+    private volatile int generation;
+    private boolean compactionQueued;
+
+    SeenArticleStore(File dir) {
+        this.dir = dir;
+        this.writer = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "SMZDMEnhancer-SeenStore");
+                thread.setDaemon(true);
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Open the shared store in the given directory, loading it in the background.
+     * Calling this again after the store is open has no effect.
+     */
+    public static synchronized SeenArticleStore open(File dir) {
+        if (shared == null) {
+            SeenArticleStore store = new SeenArticleStore(dir);
+            store.writer.execute(store::load);
+            shared = store;
+        }
+        return shared;
+    }
+
+    /**
+     * The shared store, or null if it has not been opened
+     */
+    public static SeenArticleStore get() {
+        return shared;
+    }
+
+    /**
+     * Check whether an article was seen, without blocking on disk I/O
+     */
+    public boolean contains(long articleId) {
+        if (articleId <= 0) return false;
+
+        LongBuffer slots = table;
+        if (slots != null) {
+            int mask = slots.capacity() - 1;
+            int i = LongHashSet.mix(articleId) & mask;
+            long value;
+            // Bounded so a damaged index without an empty slot cannot spin forever
+            for (int step = 0; step <= mask && (value = slots.get(i)) != 0; step++) {
+                if (value == articleId) return true;
+                i = (i + 1) & mask;
+            }
+        }
+
+        synchronized (pending) {
+            return pending.contains(articleId);
+        }
+    }
+
+    /**
+     * Record an article as seen
+     * The ID is visible to lookups immediately and persisted asynchronously
+     */
+    public void markSeen(final long articleId) {
+        if (articleId <= 0 || contains(articleId)) return;
+
+        boolean compact;
+        synchronized (pending) {
+            if (!pending.add(articleId)) return;
+            generation++;
+            compact = pending.size() >= Config.SEEN_STORE_COMPACT_THRESHOLD && !compactionQueued;
+            if (compact) compactionQueued = true;
+        }
+
+        writer.execute(new Runnable() {
+            @Override
+            public void run() {
+                appendToLog(articleId);
+            }
+        });
+        if (compact) {
+            writer.execute(this::compact);
+        }
+        Metrics.increment("seen.marked");
+    }
+
+    /**
+     * Counter that changes whenever a new ID is added
+     */
+    public int generation() {
+        return generation;
+    }
+
+    @Override
+    public String name() {
+        return "seen";
+    }
+
+    /**
+     * Heap held by pending IDs; the index itself is memory-mapped
+     */
+    @Override
+    public long estimatedBytes() {
+        synchronized (pending) {
+            return pending.estimatedBytes();
+        }
+    }
+
+    /**
+     * Move pending IDs into the mapped index ahead of the usual threshold
+     * The heap is released once the background compaction finishes; a handful of
+     * pending IDs stays in memory rather than rewriting the whole index for them
+     */
+    @Override
+    public void trimTo(long maxBytes) {
+        synchronized (pending) {
+            if (pending.estimatedBytes() <= maxBytes
+                    || pending.size() < Config.SEEN_STORE_TRIM_MIN_PENDING
+                    || compactionQueued) {
+                return;
+            }
+            compactionQueued = true;
+        }
+        writer.execute(this::compact);
+    }
+
+    /**
+     * Number of IDs currently known, indexed and pending
+     */
+    public int size() {
+        synchronized (pending) {
+            return indexedCount + pending.size();
+        }
+    }
+
+    /**
+     * Stop the writer once queued appends and compactions have finished
+     */
+    void close() throws InterruptedException {
+        writer.shutdown();
+        writer.awaitTermination(10, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Map the index and replay the log left by the previous process
+     */
+    void load() {
+        try {
+            if (!dir.isDirectory() && !dir.mkdirs()) {
+                Metrics.increment("seen.errors");
+                return;
+            }
+            mapIndex(new File(dir, INDEX_FILE));
+
+            File log = new File(dir, LOG_FILE);
+            if (log.length() >= 8) {
+                ByteBuffer buffer = ByteBuffer.allocate((int) (log.length() & ~7L));
+                try (RandomAccessFile raf = new RandomAccessFile(log, "r")) {
+                    raf.getChannel().read(buffer, 0);
+                }
+                buffer.flip();
+                synchronized (pending) {
+                    while (buffer.remaining() >= 8) {
+                        long id = buffer.getLong();
+                        if (!contains(id)) pending.add(id);
+                    }
+                    generation++;
+                }
+                compact();
+            }
+            publish();
+        } catch (IOException e) {
+            Metrics.increment("seen.errors");
+        }
+    }
+
+    private void mapIndex(File file) throws IOException {
+        if (file.length() < HEADER_BYTES) return;
+
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            MappedByteBuffer mapped = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+            if (mapped.getInt(0) != MAGIC) {
+                Metrics.increment("seen.errors");
+                return;
+            }
+            int capacity = mapped.getInt(4);
+            int count = mapped.getInt(8);
+            // A table needs at least one empty slot to end every probe
+            if (Integer.bitCount(capacity) != 1 || HEADER_BYTES + capacity * 8L != raf.length()
+                    || count < 0 || count >= capacity) {
+                Metrics.increment("seen.errors");
+                return;
+            }
+            mapped.position(HEADER_BYTES);
+            table = mapped.slice().asLongBuffer();
+            indexedCount = count;
+            synchronized (pending) {
+                // Results cached before the index was mapped no longer hold
+                generation++;
+            }
+        }
+    }
+
+    private void appendToLog(long articleId) {
+        try (FileOutputStream out = new FileOutputStream(new File(dir, LOG_FILE), true)) {
+            ByteBuffer buffer = ByteBuffer.allocate(8);
+            buffer.putLong(0, articleId);
+            out.getChannel().write(buffer);
+        } catch (IOException e) {
+            Metrics.increment("seen.errors");
+        }
+    }
+
+    /**
+     * Merge pending IDs into a new index file, swap it in and truncate the log.
+     * Runs on the writer thread, so log appends queued meanwhile land after the truncation.
+     */
+    private void compact() {
+        long[] added;
+        synchronized (pending) {
+            compactionQueued = false;
+            added = pending.toArray();
+        }
+
+        try {
+            if (added.length == 0) {
+                // Every logged ID is already in the index
+                new FileOutputStream(new File(dir, LOG_FILE)).close();
+                return;
+            }
+
+            LongBuffer oldTable = table;
+            int capacity = LongHashSet.tableSizeFor(indexedCount + added.length);
+            File tmp = new File(dir, INDEX_FILE + ".tmp");
+            MappedByteBuffer mapped;
+            try (RandomAccessFile raf = new RandomAccessFile(tmp, "rw")) {
+                raf.setLength(0);
+                raf.setLength(HEADER_BYTES + capacity * 8L);
+                mapped = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, raf.length());
+            }
+
+            // Build the new table directly in the mapped file so it never sits on the heap
+            mapped.position(HEADER_BYTES);
+            LongBuffer slots = mapped.slice().asLongBuffer();
+            int mask = capacity - 1;
+            int inserted = 0;
+            if (oldTable != null) {
+                for (int i = 0; i < oldTable.capacity(); i++) {
+                    long id = oldTable.get(i);
+                    if (id != 0 && insert(slots, mask, id)) inserted++;
+                }
+            }
+            for (long id : added) {
+                if (insert(slots, mask, id)) inserted++;
+            }
+            mapped.putInt(0, MAGIC).putInt(4, capacity).putInt(8, inserted).putInt(12, 0);
+            mapped.force();
+
+            if (!tmp.renameTo(new File(dir, INDEX_FILE))) {
+                Metrics.increment("seen.errors");
+                return;
+            }
+            table = slots;
+            indexedCount = inserted;
+
+            synchronized (pending) {
+                // Keep only IDs added while the new index was being built
+                long[] current = pending.toArray();
+                pending.clear();
+                for (long id : current) {
+                    if (!contains(id)) pending.add(id);
+                }
+                pending.shrink();
+            }
+            new FileOutputStream(new File(dir, LOG_FILE)).close();
+            Metrics.increment("seen.compactions");
+            publish();
+        } catch (IOException | IllegalStateException | OutOfMemoryError e) {
+            Metrics.increment("seen.errors");
+        }
+    }
+
+    private static boolean insert(LongBuffer slots, int mask, long id) {
+        int i = LongHashSet.mix(id) & mask;
+        for (int step = 0; step <= mask; step++) {
+            long value = slots.get(i);
+            if (value == 0) {
+                slots.put(i, id);
+                return true;
+            }
+            if (value == id) return false;
+            i = (i + 1) & mask;
+        }
+        // tableSizeFor leaves free slots, so only a damaged old table gets here
+        throw new IllegalStateException("Seen index is full");
+    }
+
+    private void publish() {
+        Metrics.gauge("seen.indexed", indexedCount);
+        Metrics.gauge("seen.index_bytes", table != null ? table.capacity() * 8L : 0);
+        synchronized (pending) {
+            Metrics.gauge("seen.pending", pending.size());
+        }
+    }
+
+    /**
+     * Parse an article_id value, returning 0 when it is not a positive number
+     */
+    public static long parseId(String value) {
+        if (value == null || value.isEmpty() || value.length() > 18) return 0;
+        long id = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < '0' || c > '9') return 0;
+            id = id * 10 + (c - '0');
+        }
+        return id;
+    }
+}
@@ -0,0 +1,90 @@
+package com.killbus.smzdmenhancer;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.os.Build;
+
+import com.killbus.smzdmenhancer.utils.Logger;
+import com.killbus.smzdmenhancer.utils.Metrics;
+import com.killbus.smzdmenhancer.utils.Tracer;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Controls tracing inside the target app via broadcast
+ *
+ * adb shell am broadcast -a com.killbus.smzdmenhancer.TRACE --es command start
+ * adb shell am broadcast -a com.killbus.smzdmenhancer.TRACE --es command dump
+ * adb shell am broadcast -a com.killbus.smzdmenhancer.TRACE --es command stop
+ *
+ * "dump" writes trace-<time>.json (open in ui.perfetto.dev or chrome://tracing)
+ * and metrics-<time>.txt into files/smzdm_enhancer of the target app.
+ *
+ * Senders need android.permission.DUMP, which adb shell holds and ordinary apps cannot get.
+ */
+public class TraceCommandReceiver extends BroadcastReceiver {
+    public static final String ACTION = "com.killbus.smzdmenhancer.TRACE";
+    private static final String SENDER_PERMISSION = "android.permission.DUMP";
+
+    private static boolean registered;
+
+    /**
+     * Register the receiver on the app context once per process
+     */
+    public static synchronized void register(Context context) {
+        if (registered) return;
+
+        IntentFilter filter = new IntentFilter(ACTION);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.TIRAMISU) {
+            context.registerReceiver(new TraceCommandReceiver(), filter, SENDER_PERMISSION, null,
+                Context.RECEIVER_EXPORTED);
+        } else {
+            context.registerReceiver(new TraceCommandReceiver(), filter, SENDER_PERMISSION, null);
+        }
+        registered = true;
+    }
+
+    @Override
+    public void onReceive(Context context, Intent intent) {
+        String command = intent.getStringExtra("command");
+        if ("start".equals(command)) {
+            Tracer.clear();
+            Config.TRACE_ENABLED = true;
+            Logger.info("Tracing started");
+        } else if ("stop".equals(command)) {
+            Config.TRACE_ENABLED = false;
+            Logger.info("Tracing stopped");
+        } else if ("dump".equals(command)) {
+            dump(context);
+        } else {
+            Logger.info("Unknown trace command: " + command);
+        }
+    }
+
+    private static void dump(Context context) {
+        try {
+            File dir = new File(context.getFilesDir(), "smzdm_enhancer");
+            if (!dir.isDirectory() && !dir.mkdirs()) {
+                Logger.info("Could not create dump directory: " + dir);
+                return;
+            }
+            long now = System.currentTimeMillis();
+            File trace = new File(dir, "trace-" + now + ".json");
+            Tracer.writeChromeTrace(trace);
+
+            File metrics = new File(dir, "metrics-" + now + ".txt");
+            try (Writer out = new OutputStreamWriter(new FileOutputStream(metrics), StandardCharsets.UTF_8)) {
+                out.write(Metrics.dump());
+            }
+            Logger.info("Dumped " + Tracer.size() + " spans to " + trace);
+        } catch (Exception e) {
+            Logger.error("Failed to dump trace", e);
+        }
+    }
+}
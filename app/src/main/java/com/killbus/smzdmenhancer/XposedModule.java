@@ -1,18 +1,32 @@
 package com.killbus.smzdmenhancer;
 
+import android.content.Context;
+
 import com.killbus.smzdmenhancer.utils.Logger;
+import com.killbus.smzdmenhancer.utils.MemoryGovernor;
+import com.killbus.smzdmenhancer.utils.Metrics;
+import com.killbus.smzdmenhancer.utils.Tracer;
 
 import de.robv.android.xposed.IXposedHookLoadPackage;
 import de.robv.android.xposed.XC_MethodHook;
 import de.robv.android.xposed.XposedHelpers;
 import de.robv.android.xposed.callbacks.XC_LoadPackage;
 
+import java.io.File;
+import java.util.concurrent.atomic.AtomicBoolean;
+
 /**
  * Main Xposed module entry point
  * Direct response String hooking strategy - simplest and most reliable
  */
 public class XposedModule implements IXposedHookLoadPackage {
     private static final String TARGET_PACKAGE = "com.smzdm.client.android";
+    private static final AdaptiveFilterController ADAPTIVE_CONTROLLER = new AdaptiveFilterController();
+    private static final FilterStats FILTER_STATS = new FilterStats();
+    private static final ResponseMemo RESPONSE_MEMO = new ResponseMemo(Config.RESPONSE_MEMO_MAX_CHARS);
+    private static final AtomicBoolean NETWORK_CALLBACK_HOOKED = new AtomicBoolean();
+    private static final AtomicBoolean ARTICLE_OPEN_HOOKED = new AtomicBoolean();
+    private static Object mainHandler;
     
     @Override
     public void handleLoadPackage(XC_LoadPackage.LoadPackageParam lpparam) throws Throwable {
@@ -51,6 +65,22 @@ public class XposedModule implements IXposedHookLoadPackage {
             // Hook the network callback interface bm.e<String>.onSuccess(String)
             // This is called with the raw JSON response before parsing
             hookNetworkCallback(classLoader);
+
+            if (Config.BYTE_LEVEL_FILTER) {
+                OkHttpFilterHook.install(classLoader);
+            }
+
+            if (Config.HIDE_SEEN_ARTICLES) {
+                openSeenStore(classLoader);
+                hookArticleOpen(classLoader);
+            }
+
+            registerTraceReceiver(classLoader);
+            registerMemoryConsumers(classLoader);
+
+            // Warm up off the main thread so the first real page is filtered at steady-state speed
+            getMainHandler(classLoader);
+            FilterWarmup.start();
             
             Logger.info("All hooks initialized successfully");
             
@@ -70,8 +100,12 @@ public class XposedModule implements IXposedHookLoadPackage {
      * VERIFIED from sources: 
      * - FollowSubRulesVM.java line 64: private final String f20026f = "https://dingyue-api.smzdm.com/home/list"
      * - This ViewModel specifically handles the follow feed list
+     * Hooked once per process; initializeHooks runs on every activity launch
      */
     private void hookNetworkCallback(ClassLoader classLoader) {
+        if (!NETWORK_CALLBACK_HOOKED.compareAndSet(false, true)) {
+            return;
+        }
         try {
             // Hook the specific ViewModel's inner callback class which is obfuscated.
             // From the decompiled source, the target class is named ea.d$a$a
@@ -89,13 +123,20 @@ public class XposedModule implements IXposedHookLoadPackage {
                     @Override
                     protected void beforeHookedMethod(MethodHookParam param) throws Throwable {
                         Object response = param.args[0];
+                        long span = Tracer.begin();
                         
                         if (response instanceof String) {
                             String jsonStr = (String) response;
                             Logger.info("*** Intercepted /home/list response, length: " + jsonStr.length());
+
+                            if (OkHttpFilterHook.consumeFiltered(jsonStr)) {
+                                Logger.debug("Response already filtered at the HTTP layer");
+                                Tracer.end("hook.onSuccess", span);
+                                return;
+                            }
                             
                             try {
-                                String filteredJson = ArticleFilter.filterJsonResponse(jsonStr);
+                                String filteredJson = filterAdaptively(jsonStr);
                                 if (filteredJson != null && !filteredJson.equals(jsonStr)) {
                                     param.args[0] = filteredJson;
                                     Logger.info("*** Response filtered successfully");
@@ -106,17 +147,188 @@ public class XposedModule implements IXposedHookLoadPackage {
                         } else {
                             Logger.info("Intercepted response, but it's not a String. Type: " + (response == null ? "null" : response.getClass().getName()));
                         }
+                        Tracer.end("hook.onSuccess", span);
                     }
                 }
             );
             Logger.info("Successfully hooked callback: " + callbackClass.getName());
             
         } catch (Exception e) {
+            NETWORK_CALLBACK_HOOKED.set(false);
             Logger.error("Failed to hook FollowSubRulesVM callback", e);
         }
     }
-    
-    
+
+    /**
+     * Open the persistent seen-article store in the app's files directory
+     */
+    private void openSeenStore(ClassLoader classLoader) {
+        try {
+            Object context = getApplication(classLoader);
+            File filesDir = (File) XposedHelpers.callMethod(context, "getFilesDir");
+            SeenArticleStore.open(new File(filesDir, "smzdm_enhancer"));
+        } catch (Exception e) {
+            Logger.error("Failed to open seen article store", e);
+        }
+    }
+
+    /**
+     * Hook Activity.onCreate to record article IDs passed to detail pages
+     * Hooked once per process; initializeHooks runs on every activity launch
+     */
+    private void hookArticleOpen(ClassLoader classLoader) {
+        if (!ARTICLE_OPEN_HOOKED.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            XposedHelpers.findAndHookMethod(
+                "android.app.Activity",
+                classLoader,
+                "onCreate",
+                "android.os.Bundle",
+                new XC_MethodHook() {
+                    @Override
+                    protected void afterHookedMethod(MethodHookParam param) throws Throwable {
+                        SeenArticleStore seenStore = SeenArticleStore.get();
+                        if (seenStore == null) {
+                            return;
+                        }
+                        try {
+                            Object intent = XposedHelpers.callMethod(param.thisObject, "getIntent");
+                            Object extras = intent != null ? XposedHelpers.callMethod(intent, "getExtras") : null;
+                            if (extras == null) {
+                                return;
+                            }
+                            for (String key : Config.SEEN_INTENT_EXTRA_KEYS) {
+                                Object value = XposedHelpers.callMethod(extras, "get", key);
+                                long articleId = value != null ? SeenArticleStore.parseId(value.toString()) : 0;
+                                if (articleId > 0) {
+                                    seenStore.markSeen(articleId);
+                                    Logger.debug("Marked article as seen: " + articleId);
+                                    return;
+                                }
+                            }
+                        } catch (Exception e) {
+                            Logger.debug("Could not read article ID from intent: " + e.getMessage());
+                        }
+                    }
+                }
+            );
+            Logger.info("Successfully hooked Activity.onCreate for seen articles");
+        } catch (Exception e) {
+            ARTICLE_OPEN_HOOKED.set(false);
+            Logger.error("Failed to hook Activity.onCreate", e);
+        }
+    }
+
+    /**
+     * Register the broadcast receiver used to start, stop and dump traces
+     */
+    private void registerTraceReceiver(ClassLoader classLoader) {
+        try {
+            TraceCommandReceiver.register((Context) getApplication(classLoader));
+        } catch (Exception e) {
+            Logger.error("Failed to register trace receiver", e);
+        }
+    }
+
+    /**
+     * Put the module's caches under the memory budget and listen for trim events
+     * Lower priority is trimmed first: the response cache is cheapest to rebuild
+     */
+    private void registerMemoryConsumers(ClassLoader classLoader) {
+        MemoryGovernor governor = MemoryGovernor.get();
+        governor.register(RESPONSE_MEMO, 0);
+        governor.register(NearDuplicateIndex.DEDUP_CONSUMER, 10);
+        SeenArticleStore seenStore = SeenArticleStore.get();
+        if (seenStore != null) {
+            governor.register(seenStore, 20);
+        }
+        // Held while in use and never trimmed, but counted so the caches make room for them
+        governor.register(MallRegistry.CONSUMER, 30);
+        governor.register(RowFilterInputStream.BUFFER_CONSUMER, 30);
+        try {
+            MemoryTrimCallbacks.register((Context) getApplication(classLoader));
+        } catch (Exception e) {
+            Logger.error("Failed to register memory callbacks", e);
+        }
+    }
+
+    /**
+     * Get the target app's Application object
+     */
+    private static Object getApplication(ClassLoader classLoader) {
+        Class<?> activityThreadClass = XposedHelpers.findClass("android.app.ActivityThread", classLoader);
+        Object currentActivityThread = XposedHelpers.callStaticMethod(activityThreadClass, "currentActivityThread");
+        return XposedHelpers.callMethod(currentActivityThread, "getApplication");
+    }
+
+    /**
+     * Run the filter in the mode chosen by the adaptive controller
+     * and feed the observed cost back into it
+     */
+    private static String filterAdaptively(String jsonStr) {
+        ResponseMemo.Key memoKey = null;
+        if (Config.RESPONSE_MEMO_ENABLED) {
+            long span = Tracer.begin();
+            memoKey = ResponseMemo.keyOf(jsonStr);
+            String cached = memoKey != null ? RESPONSE_MEMO.get(memoKey) : null;
+            Tracer.end("filter.memo", span);
+            if (cached != null) {
+                return cached == ResponseMemo.NO_CHANGE ? null : cached;
+            }
+        }
+
+        AdaptiveFilterController.Mode mode = ADAPTIVE_CONTROLLER.currentMode();
+        Metrics.increment("filter.responses." + mode.name().toLowerCase());
+        if (mode == AdaptiveFilterController.Mode.PASSTHROUGH) {
+            return null;
+        }
+
+        long start = System.nanoTime();
+        String filteredJson = null;
+        boolean fullFilter = mode == AdaptiveFilterController.Mode.FULL;
+        if (!fullFilter) {
+            long span = Tracer.begin();
+            fullFilter = PrescanFilter.mayFilter(jsonStr, FILTER_STATS);
+            Tracer.end("filter.prescan", span);
+        }
+        if (fullFilter) {
+            filteredJson = ArticleFilter.filterJsonResponse(jsonStr, FILTER_STATS);
+        } else {
+            Metrics.increment("filter.prescan_skipped");
+        }
+        long elapsed = System.nanoTime() - start;
+        recordLatency(elapsed);
+        if (memoKey != null) {
+            RESPONSE_MEMO.put(memoKey, filteredJson != null ? filteredJson : ResponseMemo.NO_CHANGE);
+        }
+        MemoryGovernor.get().enforce();
+
+        ADAPTIVE_CONTROLLER.record(mode, elapsed, jsonStr.length(),
+            FILTER_STATS.rows, FILTER_STATS.dropped);
+        AdaptiveFilterController.Mode next = ADAPTIVE_CONTROLLER.currentMode();
+        if (next != mode) {
+            Logger.info("Adaptive filter mode: " + mode + " -> " + next);
+        }
+        return filteredJson;
+    }
+
+    /**
+     * Report first-call and steady-state filter latency
+     */
+    private static void recordLatency(long elapsedNs) {
+        long micros = elapsedNs / 1000;
+        if (Metrics.gaugeValue("filter.first_call_us") == null) {
+            Metrics.gauge("filter.first_call_us", micros);
+            return;
+        }
+        Metrics.increment("filter.steady_calls");
+        Metrics.add("filter.steady_total_us", micros);
+        Metrics.gauge("filter.steady_avg_us",
+            Metrics.counter("filter.steady_total_us") / Metrics.counter("filter.steady_calls"));
+    }
+
     /**
      * Show Toast notification in the target app
      */
@@ -127,42 +339,41 @@ public class XposedModule implements IXposedHookLoadPackage {
             Object context = XposedHelpers.callMethod(currentActivityThread, "getApplication");
             
             final Object appContext = context;
-            new Thread(new Runnable() {
+            XposedHelpers.callMethod(getMainHandler(classLoader), "post", new Runnable() {
                 @Override
                 public void run() {
                     try {
-                        Class<?> looperClass = XposedHelpers.findClass("android.os.Looper", classLoader);
-                        Object mainLooper = XposedHelpers.callStaticMethod(looperClass, "getMainLooper");
-                        
-                        Class<?> handlerClass = XposedHelpers.findClass("android.os.Handler", classLoader);
-                        Object handler = XposedHelpers.newInstance(handlerClass, mainLooper);
-                        
-                        XposedHelpers.callMethod(handler, "post", new Runnable() {
-                            @Override
-                            public void run() {
-                                try {
-                                    Class<?> toastClass = XposedHelpers.findClass("android.widget.Toast", classLoader);
-                                    Object toast = XposedHelpers.callStaticMethod(
-                                        toastClass,
-                                        "makeText",
-                                        appContext,
-                                        message,
-                                        0
-                                    );
-                                    XposedHelpers.callMethod(toast, "show");
-                                    Logger.debug("Toast shown: " + message);
-                                } catch (Exception e) {
-                                    Logger.error("Failed to show Toast", e);
-                                }
-                            }
-                        });
+                        Class<?> toastClass = XposedHelpers.findClass("android.widget.Toast", classLoader);
+                        Object toast = XposedHelpers.callStaticMethod(
+                            toastClass,
+                            "makeText",
+                            appContext,
+                            message,
+                            0
+                        );
+                        XposedHelpers.callMethod(toast, "show");
+                        Logger.debug("Toast shown: " + message);
                     } catch (Exception e) {
-                        Logger.error("Failed to post Toast to main thread", e);
+                        Logger.error("Failed to show Toast", e);
                     }
                 }
-            }).start();
+            });
         } catch (Exception e) {
             Logger.error("Failed to show Toast", e);
         }
     }
+
+    /**
+     * Get a Handler on the app's main looper, created once and reused for every Toast
+     */
+    static synchronized Object getMainHandler(ClassLoader classLoader) {
+        if (mainHandler == null) {
+            Class<?> looperClass = XposedHelpers.findClass("android.os.Looper", classLoader);
+            Object mainLooper = XposedHelpers.callStaticMethod(looperClass, "getMainLooper");
+
+            Class<?> handlerClass = XposedHelpers.findClass("android.os.Handler", classLoader);
+            mainHandler = XposedHelpers.newInstance(handlerClass, mainLooper);
+        }
+        return mainHandler;
+    }
 }
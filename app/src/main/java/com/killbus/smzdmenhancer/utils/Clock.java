@@ -0,0 +1,16 @@
+package com.killbus.smzdmenhancer.utils;
+
+/**
+ * Monotonic time source, replaceable with a fake clock in JVM tests
+ */
+public interface Clock {
+    /**
+     * System monotonic clock
+     */
+    Clock SYSTEM = System::nanoTime;
+
+    /**
+     * Current monotonic time in nanoseconds
+     */
+    long nanoTime();
+}
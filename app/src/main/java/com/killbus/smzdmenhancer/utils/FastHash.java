@@ -0,0 +1,97 @@
+package com.killbus.smzdmenhancer.utils;
+
+/**
+ * Fast non-cryptographic 64-bit hashing
+ * Good enough to key caches, not to resist deliberate collisions
+ */
+public class FastHash {
+    private static final long P1 = 0x9e3779b185ebca87L;
+    private static final long P2 = 0xc2b2ae3d27d4eb4fL;
+    private static final long P3 = 0x165667b19e3779f9L;
+
+    /**
+     * Hash the UTF-16 code units of a string, four at a time
+     */
+    public static long hash(CharSequence text) {
+        int length = text.length();
+        long h = P3 ^ (length * P1);
+        int i = 0;
+        for (; i + 4 <= length; i += 4) {
+            long k = text.charAt(i)
+                | (long) text.charAt(i + 1) << 16
+                | (long) text.charAt(i + 2) << 32
+                | (long) text.charAt(i + 3) << 48;
+            k *= P2;
+            k = Long.rotateLeft(k, 31);
+            k *= P1;
+            h ^= k;
+            h = Long.rotateLeft(h, 27) * P1 + P3;
+        }
+        for (; i < length; i++) {
+            h ^= text.charAt(i) * P1;
+            h = Long.rotateLeft(h, 11) * P2;
+        }
+        return fmix64(h);
+    }
+
+    /**
+     * 64-bit finalizer from MurmurHash3
+     */
+    public static long fmix64(long value) {
+        value ^= value >>> 33;
+        value *= 0xff51afd7ed558ccdL;
+        value ^= value >>> 33;
+        value *= 0xc4ceb9fe1a85ec53L;
+        value ^= value >>> 33;
+        return value;
+    }
+
+    /**
+     * Incremental hash of UTF-16 code units, for text that is produced piecewise
+     * Values differ from hash(CharSequence); compare only with other Stream values
+     */
+    public static final class Stream {
+        private long h = P3;
+        private long k;
+        private int length;
+
+        public Stream update(char c) {
+            int lane = length & 3;
+            k |= (long) c << (lane << 4);
+            length++;
+            if (lane == 3) {
+                long m = k * P2;
+                m = Long.rotateLeft(m, 31);
+                m *= P1;
+                h ^= m;
+                h = Long.rotateLeft(h, 27) * P1 + P3;
+                k = 0;
+            }
+            return this;
+        }
+
+        public Stream update(CharSequence text) {
+            for (int i = 0; i < text.length(); i++) {
+                update(text.charAt(i));
+            }
+            return this;
+        }
+
+        /**
+         * Number of chars hashed so far
+         */
+        public int length() {
+            return length;
+        }
+
+        public long value() {
+            long tail = h;
+            int lanes = length & 3;
+            for (int i = 0; i < lanes; i++) {
+                tail ^= (k >>> (i << 4) & 0xffff) * P1;
+                tail = Long.rotateLeft(tail, 11) * P2;
+            }
+            return fmix64(tail ^ length * P1);
+        }
+    }
+}
@@ -8,13 +8,16 @@ import de.robv.android.xposed.XposedBridge;
  */
 public class Logger {
     private static final String TAG = "SMZDMEnhancer";
+
+    // XposedBridge only exists inside a hooked process; plain JVM tests log to stderr
+    private static final boolean XPOSED = isXposedAvailable();
     
     /**
      * Log info message
      */
     public static void info(String message) {
         if (Config.ENABLE_LOGGING) {
-            XposedBridge.log(TAG + ": " + message);
+            log(TAG + ": " + message);
         }
     }
     
@@ -23,7 +26,7 @@ public class Logger {
      */
     public static void debug(String message) {
         if (Config.DEBUG_MODE) {
-            XposedBridge.log(TAG + " [DEBUG]: " + message);
+            log(TAG + " [DEBUG]: " + message);
         }
     }
     
@@ -31,9 +34,13 @@ public class Logger {
      * Log error message
      */
     public static void error(String message, Throwable throwable) {
-        XposedBridge.log(TAG + " [ERROR]: " + message);
+        log(TAG + " [ERROR]: " + message);
         if (throwable != null) {
-            XposedBridge.log(throwable);
+            if (XPOSED) {
+                XposedBridge.log(throwable);
+            } else {
+                throwable.printStackTrace();
+            }
         }
     }
     
@@ -54,4 +61,21 @@ public class Logger {
             debug(String.format("Drop \"%s (%s)\" from \"%s\"", title, id, type));
         }
     }
+
+    private static void log(String line) {
+        if (XPOSED) {
+            XposedBridge.log(line);
+        } else {
+            System.err.println(line);
+        }
+    }
+
+    private static boolean isXposedAvailable() {
+        try {
+            Class.forName("de.robv.android.xposed.XposedBridge", false, Logger.class.getClassLoader());
+            return true;
+        } catch (ClassNotFoundException | LinkageError e) {
+            return false;
+        }
+    }
 }
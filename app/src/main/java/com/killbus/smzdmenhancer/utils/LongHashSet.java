@@ -0,0 +1,119 @@
+package com.killbus.smzdmenhancer.utils;
+
+import java.util.Arrays;
+
+/**
+ * Open-addressing set of positive longs without boxing
+ * 0 marks an empty slot, so 0 and negative values are never stored
+ * Not thread-safe
+ */
+public class LongHashSet {
+    private long[] slots;
+    private int size;
+
+    public LongHashSet(int expectedSize) {
+        slots = new long[tableSizeFor(expectedSize)];
+    }
+
+    /**
+     * Add a value
+     *
+     * @return true if the value was not already present
+     */
+    public boolean add(long value) {
+        if (value <= 0) return false;
+        if ((size + 1) * 4L > slots.length * 3L) {
+            rehash(slots.length * 2);
+        }
+        int mask = slots.length - 1;
+        int i = mix(value) & mask;
+        while (slots[i] != 0) {
+            if (slots[i] == value) return false;
+            i = (i + 1) & mask;
+        }
+        slots[i] = value;
+        size++;
+        return true;
+    }
+
+    public boolean contains(long value) {
+        if (value <= 0) return false;
+        int mask = slots.length - 1;
+        int i = mix(value) & mask;
+        while (slots[i] != 0) {
+            if (slots[i] == value) return true;
+            i = (i + 1) & mask;
+        }
+        return false;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Copy all values into a new array, in table order
+     */
+    public long[] toArray() {
+        long[] result = new long[size];
+        int n = 0;
+        for (long value : slots) {
+            if (value != 0) result[n++] = value;
+        }
+        return result;
+    }
+
+    public void clear() {
+        Arrays.fill(slots, 0);
+        size = 0;
+    }
+
+    /**
+     * Shrink the table to the smallest size that holds the current values
+     */
+    public void shrink() {
+        int capacity = tableSizeFor(size);
+        if (capacity < slots.length) {
+            rehash(capacity);
+        }
+    }
+
+    /**
+     * Approximate heap footprint of the table in bytes
+     */
+    public long estimatedBytes() {
+        return slots.length * 8L;
+    }
+
+    private void rehash(int newCapacity) {
+        long[] old = slots;
+        slots = new long[newCapacity];
+        size = 0;
+        for (long value : old) {
+            if (value != 0) add(value);
+        }
+    }
+
+    /**
+     * Spread the bits of a long into a table index (Murmur3 finalizer)
+     */
+    public static int mix(long value) {
+        value ^= value >>> 33;
+        value *= 0xff51afd7ed558ccdL;
+        value ^= value >>> 33;
+        value *= 0xc4ceb9fe1a85ec53L;
+        value ^= value >>> 33;
+        return (int) value;
+    }
+
+    /**
+     * Smallest power of two table that holds the given number of values at 3/4 load
+     */
+    public static int tableSizeFor(int expectedSize) {
+        int capacity = 16;
+        while (capacity * 3L < expectedSize * 4L) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+}
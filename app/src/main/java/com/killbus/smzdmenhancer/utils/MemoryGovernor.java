@@ -0,0 +1,164 @@
+package com.killbus.smzdmenhancer.utils;
+
+import com.killbus.smzdmenhancer.Config;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Shared memory budget for the module's caches and buffers inside the app's heap
+ *
+ * Consumers report an estimated footprint and know how to shrink themselves.
+ * When the total goes over the budget, consumers are trimmed in priority order,
+ * cheapest to rebuild first. Trim levels from the app's onTrimMemory lower the
+ * target further, down to releasing everything that can be rebuilt.
+ *
+ * Has no Android dependencies; MemoryTrimCallbacks forwards the system callbacks.
+ */
+public class MemoryGovernor {
+    // Values of ComponentCallbacks2.TRIM_MEMORY_*
+    public static final int TRIM_MEMORY_RUNNING_MODERATE = 5;
+    public static final int TRIM_MEMORY_RUNNING_LOW = 10;
+    public static final int TRIM_MEMORY_RUNNING_CRITICAL = 15;
+    public static final int TRIM_MEMORY_UI_HIDDEN = 20;
+    public static final int TRIM_MEMORY_BACKGROUND = 40;
+    public static final int TRIM_MEMORY_MODERATE = 60;
+    public static final int TRIM_MEMORY_COMPLETE = 80;
+
+    /**
+     * A cache or buffer whose memory the governor manages
+     */
+    public interface Consumer {
+        /**
+         * Short name used in metrics
+         */
+        String name();
+
+        /**
+         * Current heap footprint in bytes
+         */
+        long estimatedBytes();
+
+        /**
+         * Release memory until at most maxBytes are held, if possible
+         */
+        void trimTo(long maxBytes);
+    }
+
+    private static volatile MemoryGovernor shared;
+
+    private final long budgetBytes;
+    private final List<Consumer> consumers = new ArrayList<>();
+    private final List<Integer> priorities = new ArrayList<>();
+    // Gauge name per consumer, built once instead of on every total
+    private final List<String> gaugeKeys = new ArrayList<>();
+
+    public MemoryGovernor(long budgetBytes) {
+        this.budgetBytes = budgetBytes;
+        Metrics.gauge("memory.budget_bytes", budgetBytes);
+    }
+
+    /**
+     * The shared governor, created on first use with Config.MEMORY_BUDGET_KB
+     */
+    public static MemoryGovernor get() {
+        MemoryGovernor governor = shared;
+        if (governor == null) {
+            synchronized (MemoryGovernor.class) {
+                governor = shared;
+                if (governor == null) {
+                    governor = new MemoryGovernor(Config.MEMORY_BUDGET_KB * 1024L);
+                    shared = governor;
+                }
+            }
+        }
+        return governor;
+    }
+
+    /**
+     * Register a consumer; registering the same one again has no effect
+     *
+     * @param priority Lower is trimmed first.
+     */
+    public synchronized void register(Consumer consumer, int priority) {
+        if (consumers.contains(consumer)) return;
+        int i = 0;
+        while (i < priorities.size() && priorities.get(i) <= priority) i++;
+        consumers.add(i, consumer);
+        priorities.add(i, priority);
+        gaugeKeys.add(i, "memory." + consumer.name() + "_bytes");
+    }
+
+    /**
+     * Trim consumers if the total is over budget
+     *
+     * @return The total estimated bytes afterwards.
+     */
+    public synchronized long enforce() {
+        return trimTo(budgetBytes);
+    }
+
+    /**
+     * Shed memory in response to ComponentCallbacks2.onTrimMemory
+     */
+    public synchronized void onTrimMemory(int level) {
+        Metrics.increment("memory.trim_events");
+        Metrics.gauge("memory.last_trim_level", level);
+        trimTo(targetFor(level));
+    }
+
+    /**
+     * Shed everything that can be rebuilt, as for ComponentCallbacks.onLowMemory
+     */
+    public void onLowMemory() {
+        onTrimMemory(TRIM_MEMORY_COMPLETE);
+    }
+
+    /**
+     * Total estimated bytes across all consumers, publishing per-consumer gauges
+     */
+    public synchronized long totalBytes() {
+        long total = 0;
+        for (int i = 0; i < consumers.size(); i++) {
+            long bytes = consumers.get(i).estimatedBytes();
+            Metrics.gauge(gaugeKeys.get(i), bytes);
+            total += bytes;
+        }
+        Metrics.gauge("memory.total_bytes", total);
+        return total;
+    }
+
+    /**
+     * Byte target for a trim level
+     * Critical or backgrounded-and-likely-killed: release everything;
+     * low or in the background: a quarter of the budget; otherwise half
+     */
+    long targetFor(int level) {
+        if (level >= TRIM_MEMORY_MODERATE || level == TRIM_MEMORY_RUNNING_CRITICAL) {
+            return 0;
+        }
+        if (level >= TRIM_MEMORY_BACKGROUND || level == TRIM_MEMORY_RUNNING_LOW) {
+            return budgetBytes / 4;
+        }
+        return budgetBytes / 2;
+    }
+
+    private long trimTo(long targetBytes) {
+        long total = totalBytes();
+        if (total <= targetBytes) return total;
+
+        Metrics.increment("memory.trims");
+        for (Consumer consumer : consumers) {
+            long before = consumer.estimatedBytes();
+            long excess = total - targetBytes;
+            if (before == 0) continue;
+
+            consumer.trimTo(Math.max(0, before - excess));
+            long after = consumer.estimatedBytes();
+            total -= before - after;
+            Metrics.add("memory.evicted_bytes", before - after);
+            if (total <= targetBytes) break;
+        }
+        return totalBytes();
+    }
+}
@@ -0,0 +1,90 @@
+package com.killbus.smzdmenhancer.utils;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Process-wide counters and gauges for the module
+ * Plain Java so it can be used from JVM tests without Xposed
+ */
+public class Metrics {
+    private static final ConcurrentHashMap<String, AtomicLong> COUNTERS = new ConcurrentHashMap<>();
+    private static final ConcurrentHashMap<String, Object> GAUGES = new ConcurrentHashMap<>();
+
+    /**
+     * Increment a counter by one
+     */
+    public static void increment(String name) {
+        add(name, 1);
+    }
+
+    /**
+     * Add a delta to a counter
+     */
+    public static void add(String name, long delta) {
+        AtomicLong counter = COUNTERS.get(name);
+        if (counter == null) {
+            AtomicLong created = new AtomicLong();
+            counter = COUNTERS.putIfAbsent(name, created);
+            if (counter == null) {
+                counter = created;
+            }
+        }
+        counter.addAndGet(delta);
+    }
+
+    /**
+     * Set a gauge to its latest value
+     */
+    public static void gauge(String name, Object value) {
+        GAUGES.put(name, value);
+    }
+
+    /**
+     * Get the current value of a counter, 0 if never incremented
+     */
+    public static long counter(String name) {
+        AtomicLong counter = COUNTERS.get(name);
+        return counter != null ? counter.get() : 0;
+    }
+
+    /**
+     * Get the current value of a gauge, or null if never set
+     */
+    public static Object gaugeValue(String name) {
+        return GAUGES.get(name);
+    }
+
+    /**
+     * Sorted copy of all counters and gauges
+     */
+    public static Map<String, Object> snapshot() {
+        Map<String, Object> result = new TreeMap<>();
+        for (Map.Entry<String, AtomicLong> entry : COUNTERS.entrySet()) {
+            result.put(entry.getKey(), entry.getValue().get());
+        }
+        result.putAll(GAUGES);
+        return result;
+    }
+
+    /**
+     * Render all metrics as one "name=value" line each
+     */
+    public static String dump() {
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, Object> entry : snapshot().entrySet()) {
+            sb.append(entry.getKey()).append('=').append(entry.getValue()).append('\n');
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Clear all metrics
+     */
+    public static void reset() {
+        COUNTERS.clear();
+        GAUGES.clear();
+    }
+}
@@ -0,0 +1,223 @@
+package com.killbus.smzdmenhancer.utils;
+
+/**
+ * 64-bit SimHash over character bigrams of a normalized title
+ *
+ * Normalization keeps letters and digits (including CJK), lower-cases ASCII
+ * and drops whitespace and punctuation, so "小米 手环8！" and "小米手环8"
+ * produce the same shingles. Prices ("99元", "¥1,299", "到手价89") and
+ * marketing words ("包邮", "需用券", "史低", "官方正品") are dropped as well:
+ * reposts of a deal mostly differ in exactly those. Titles that differ by a few
+ * characters end up a few bits apart.
+ */
+public class SimHash {
+    // SPREAD[v] holds bit k of v in byte lane k, so one add counts 8 bits at once
+    private static final long[] SPREAD = new long[256];
+
+    // Words that say nothing about the product; a number right after one is a price
+    private static final String[] NOISE_WORDS = {
+        "包邮", "需用券", "用券", "领券", "叠券", "券后", "需凑单", "凑单", "到手价", "到手",
+        "折后", "历史低价", "史低", "新低", "好价", "秒杀", "限时", "直降", "百亿补贴", "补贴",
+        "plus会员", "plus", "低至", "仅需", "满", "减",
+    };
+
+    // Sales-channel qualifiers, dropped on their own: "国行 27英寸" keeps its size
+    private static final String[] QUALIFIER_WORDS = {
+        "官方", "正品", "国行", "自营", "新品", "旗舰店",
+    };
+
+    // Bit set over (first char & 0xfff) of the noise words, to skip the word list for most chars
+    private static final long[] NOISE_FIRST = new long[64];
+
+    static {
+        for (int v = 0; v < 256; v++) {
+            long lanes = 0;
+            for (int k = 0; k < 8; k++) {
+                if ((v & (1 << k)) != 0) lanes |= 1L << (k * 8);
+            }
+            SPREAD[v] = lanes;
+        }
+        for (String word : NOISE_WORDS) {
+            int bit = word.charAt(0) & 0xfff;
+            NOISE_FIRST[bit >>> 6] |= 1L << bit;
+        }
+        for (String word : QUALIFIER_WORDS) {
+            int bit = word.charAt(0) & 0xfff;
+            NOISE_FIRST[bit >>> 6] |= 1L << bit;
+        }
+    }
+
+    /**
+     * Hash a title
+     *
+     * @param text The title.
+     * @param weights Scratch array of at least 64 ints, overwritten.
+     * @return The fingerprint, or 0 if the title has no letters or digits.
+     */
+    public static long hash(CharSequence text, int[] weights) {
+        for (int b = 0; b < 64; b++) {
+            weights[b] = 0;
+        }
+
+        // Per shingle byte j, lane k counts how often bit 8j+k was set;
+        // lanes are 8 bits wide and get flushed into weights before they overflow
+        long c0 = 0, c1 = 0, c2 = 0, c3 = 0, c4 = 0, c5 = 0, c6 = 0, c7 = 0;
+        int pending = 0;
+        int shingles = 0;
+
+        char prev = 0;
+        int kept = 0;
+        for (int i = 0; i <= text.length(); i++) {
+            long shingle;
+            if (i < text.length()) {
+                char c = text.charAt(i);
+                int noise = noiseLength(text, i);
+                if (noise > 0) {
+                    i += noise - 1;
+                    continue;
+                }
+                if (!Character.isLetterOrDigit(c)) continue;
+                if (c >= 'A' && c <= 'Z') c = (char) (c + ('a' - 'A'));
+                boolean first = kept == 0;
+                long pair = ((long) prev << 16) | c;
+                prev = c;
+                kept++;
+                if (first) continue;
+                shingle = FastHash.fmix64(pair);
+            } else if (kept == 1) {
+                shingle = FastHash.fmix64(prev);
+            } else {
+                break;
+            }
+
+            c0 += SPREAD[(int) shingle & 0xff];
+            c1 += SPREAD[(int) (shingle >>> 8) & 0xff];
+            c2 += SPREAD[(int) (shingle >>> 16) & 0xff];
+            c3 += SPREAD[(int) (shingle >>> 24) & 0xff];
+            c4 += SPREAD[(int) (shingle >>> 32) & 0xff];
+            c5 += SPREAD[(int) (shingle >>> 40) & 0xff];
+            c6 += SPREAD[(int) (shingle >>> 48) & 0xff];
+            c7 += SPREAD[(int) (shingle >>> 56) & 0xff];
+            shingles++;
+            if (++pending == 255) {
+                flush(weights, c0, c1, c2, c3, c4, c5, c6, c7);
+                c0 = c1 = c2 = c3 = c4 = c5 = c6 = c7 = 0;
+                pending = 0;
+            }
+        }
+        if (kept == 0) return 0;
+        flush(weights, c0, c1, c2, c3, c4, c5, c6, c7);
+
+        // A bit is set when more than half of the shingles had it set
+        long fingerprint = 0;
+        for (int b = 0; b < 64; b++) {
+            if (weights[b] * 2 > shingles) fingerprint |= 1L << b;
+        }
+        return fingerprint;
+    }
+
+    /**
+     * Number of differing bits between two fingerprints
+     */
+    public static int distance(long a, long b) {
+        return Long.bitCount(a ^ b);
+    }
+
+    /**
+     * Length of the price or marketing token starting at i, or 0 if there is none
+     */
+    static int noiseLength(CharSequence text, int i) {
+        char c = text.charAt(i);
+        if (c == '¥' || c == '￥' || c == '$') {
+            return Math.max(1, priceEnd(text, i + 1, false) - i);
+        }
+        if (c >= '0' && c <= '9') {
+            // Digits glued to a Latin word are a model number: "K70", "WH-1000XM5" keeps "1000"
+            if (i > 0 && isAsciiLetterOrDigit(text.charAt(i - 1))) return 0;
+            int end = priceEnd(text, i, true);
+            return end > i ? end - i : 0;
+        }
+        if (c >= 'A' && c <= 'Z') c = (char) (c + ('a' - 'A'));
+        int bit = c & 0xfff;
+        if (c < 'a' || (NOISE_FIRST[bit >>> 6] & (1L << bit)) == 0) return 0;
+
+        for (String word : NOISE_WORDS) {
+            if (startsWith(text, i, word)) {
+                int end = i + word.length();
+                if (isAsciiLetterOrDigit(word.charAt(word.length() - 1))
+                        && end < text.length() && isAsciiLetterOrDigit(text.charAt(end))) {
+                    continue;
+                }
+                int price = priceEnd(text, end, false);
+                if (price > end) return price - i;
+                // "满" and "减" are only noise in "满199减20"
+                return word.length() > 1 ? word.length() : 0;
+            }
+        }
+        for (String word : QUALIFIER_WORDS) {
+            if (startsWith(text, i, word)) return word.length();
+        }
+        return 0;
+    }
+
+    /**
+     * End of an amount starting at i, after optional separators, digits and a 元/块/折 unit
+     *
+     * @param needUnit Only accept amounts followed by a unit.
+     * @return The end index, or i if there is no amount.
+     */
+    private static int priceEnd(CharSequence text, int i, boolean needUnit) {
+        int length = text.length();
+        int j = i;
+        while (j < length && (text.charAt(j) == ' ' || text.charAt(j) == ':' || text.charAt(j) == '：')) j++;
+        int digits = j;
+        while (j < length) {
+            char c = text.charAt(j);
+            if (c >= '0' && c <= '9') {
+                j++;
+            } else if ((c == ',' || c == '.') && j > digits && j + 1 < length
+                    && text.charAt(j + 1) >= '0' && text.charAt(j + 1) <= '9') {
+                j++;
+            } else {
+                break;
+            }
+        }
+        if (j == digits) return i;
+        int unit = j;
+        while (unit < length && text.charAt(unit) == ' ') unit++;
+        if (unit < length) {
+            char c = text.charAt(unit);
+            if (c == '元' || c == '块' || c == '折') return unit + 1;
+        }
+        return needUnit ? i : j;
+    }
+
+    private static boolean startsWith(CharSequence text, int i, String word) {
+        if (i + word.length() > text.length()) return false;
+        for (int k = 0; k < word.length(); k++) {
+            char c = text.charAt(i + k);
+            if (c >= 'A' && c <= 'Z') c = (char) (c + ('a' - 'A'));
+            if (c != word.charAt(k)) return false;
+        }
+        return true;
+    }
+
+    private static boolean isAsciiLetterOrDigit(char c) {
+        return (c >= '0' && c <= '9') || (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+
+    private static void flush(int[] weights, long c0, long c1, long c2, long c3,
+                              long c4, long c5, long c6, long c7) {
+        for (int k = 0; k < 8; k++) {
+            int shift = k * 8;
+            weights[k] += (int) (c0 >>> shift) & 0xff;
+            weights[8 + k] += (int) (c1 >>> shift) & 0xff;
+            weights[16 + k] += (int) (c2 >>> shift) & 0xff;
+            weights[24 + k] += (int) (c3 >>> shift) & 0xff;
+            weights[32 + k] += (int) (c4 >>> shift) & 0xff;
+            weights[40 + k] += (int) (c5 >>> shift) & 0xff;
+            weights[48 + k] += (int) (c6 >>> shift) & 0xff;
+            weights[56 + k] += (int) (c7 >>> shift) & 0xff;
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package com.killbus.smzdmenhancer.utils;
+
+import com.killbus.smzdmenhancer.Config;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lightweight span recorder for per-stage latency attribution
+ *
+ * Spans are written into a fixed-size ring and can be dumped as a
+ * Chrome trace / Perfetto compatible JSON file. When Config.TRACE_ENABLED
+ * is false, begin() and end() cost a single branch.
+ *
+ * Usage:
+ *   long span = Tracer.begin();
+ *   ...
+ *   Tracer.end("filter.parse", span);
+ */
+public class Tracer {
+    private static final int CAPACITY = Integer.highestOneBit(Math.max(16, Config.TRACE_RING_SIZE));
+
+    private static final String[] NAMES = new String[CAPACITY];
+    private static final long[] STARTS = new long[CAPACITY];
+    private static final long[] DURATIONS = new long[CAPACITY];
+    private static final long[] THREADS = new long[CAPACITY];
+    private static final AtomicLong NEXT = new AtomicLong();
+
+    /**
+     * Start a span
+     *
+     * @return The start timestamp to pass to end(), or 0 when tracing is disabled.
+     */
+    public static long begin() {
+        return Config.TRACE_ENABLED ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Finish a span started with begin()
+     *
+     * @param name Stage name; use constants to keep this allocation-free.
+     * @param start Value returned by begin().
+     */
+    public static void end(String name, long start) {
+        if (start == 0) return;
+        long now = System.nanoTime();
+        int slot = (int) (NEXT.getAndIncrement() & (CAPACITY - 1));
+        NAMES[slot] = name;
+        STARTS[slot] = start;
+        DURATIONS[slot] = now - start;
+        THREADS[slot] = Thread.currentThread().getId();
+    }
+
+    /**
+     * Number of spans currently held in the ring
+     */
+    public static int size() {
+        return (int) Math.min(NEXT.get(), CAPACITY);
+    }
+
+    /**
+     * Drop all recorded spans
+     */
+    public static synchronized void clear() {
+        NEXT.set(0);
+        for (int i = 0; i < CAPACITY; i++) {
+            NAMES[i] = null;
+        }
+    }
+
+    /**
+     * Write the ring as a Chrome trace JSON document, oldest span first
+     * Spans recorded concurrently with the dump may be skipped or torn
+     */
+    public static synchronized void writeChromeTrace(Writer out) throws IOException {
+        long next = NEXT.get();
+        long first = Math.max(0, next - CAPACITY);
+        long origin = Long.MAX_VALUE;
+        for (long i = first; i < next; i++) {
+            int slot = (int) (i & (CAPACITY - 1));
+            if (NAMES[slot] != null) origin = Math.min(origin, STARTS[slot]);
+        }
+
+        out.write("{\"displayTimeUnit\":\"ms\",\"traceEvents\":[");
+        boolean separator = false;
+        for (long i = first; i < next; i++) {
+            int slot = (int) (i & (CAPACITY - 1));
+            String name = NAMES[slot];
+            if (name == null) continue;
+            if (separator) out.write(',');
+            separator = true;
+            out.write("\n{\"name\":\"");
+            out.write(name);
+            out.write("\",\"cat\":\"smzdm\",\"ph\":\"X\",\"pid\":1,\"tid\":");
+            out.write(Long.toString(THREADS[slot]));
+            out.write(",\"ts\":");
+            out.write(micros(STARTS[slot] - origin));
+            out.write(",\"dur\":");
+            out.write(micros(DURATIONS[slot]));
+            out.write('}');
+        }
+        out.write("\n]}\n");
+    }
+
+    /**
+     * Dump the ring to a file
+     */
+    public static void writeChromeTrace(File file) throws IOException {
+        try (Writer out = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8)) {
+            writeChromeTrace(out);
+        }
+    }
+
+    private static String micros(long nanos) {
+        long fraction = nanos % 1000;
+        return (nanos / 1000) + (fraction < 10 ? ".00" : fraction < 100 ? ".0" : ".") + fraction;
+    }
+}
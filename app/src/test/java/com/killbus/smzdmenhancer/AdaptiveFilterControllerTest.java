@@ -0,0 +1,134 @@
+package com.killbus.smzdmenhancer;
+
+import com.killbus.smzdmenhancer.AdaptiveFilterController.Mode;
+import com.killbus.smzdmenhancer.utils.Clock;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Mode transitions of the adaptive controller, driven by a fake clock
+ */
+public class AdaptiveFilterControllerTest {
+    private static final long MS = 1_000_000L;
+
+    private long now;
+    private final Clock clock = () -> now;
+
+    private boolean savedEnabled;
+    private int savedZeroDropPages;
+    private long savedRecoveryMs;
+
+    @Before
+    public void setUp() {
+        Config.DEBUG_MODE = false;
+        Config.ENABLE_LOGGING = false;
+        savedEnabled = Config.ADAPTIVE_FILTER_ENABLED;
+        savedZeroDropPages = Config.ADAPTIVE_ZERO_DROP_PAGES;
+        savedRecoveryMs = Config.ADAPTIVE_RECOVERY_MS;
+        Config.ADAPTIVE_FILTER_ENABLED = true;
+        Config.ADAPTIVE_ZERO_DROP_PAGES = 5;
+        Config.ADAPTIVE_RECOVERY_MS = 30_000;
+        now = 0;
+    }
+
+    @After
+    public void tearDown() {
+        Config.ADAPTIVE_FILTER_ENABLED = savedEnabled;
+        Config.ADAPTIVE_ZERO_DROP_PAGES = savedZeroDropPages;
+        Config.ADAPTIVE_RECOVERY_MS = savedRecoveryMs;
+    }
+
+    @Test
+    public void zeroDropPagesStepDownToPrescan() {
+        AdaptiveFilterController controller = new AdaptiveFilterController(clock);
+        for (int i = 0; i < 4; i++) {
+            controller.record(Mode.FULL, MS, 1000, 20, 0);
+            assertEquals(Mode.FULL, controller.currentMode());
+        }
+        controller.record(Mode.FULL, MS, 1000, 20, 0);
+        assertEquals(Mode.PRESCAN, controller.currentMode());
+    }
+
+    @Test
+    public void droppingPagesStayFull() {
+        AdaptiveFilterController controller = new AdaptiveFilterController(clock);
+        for (int i = 0; i < 20; i++) {
+            controller.record(Mode.FULL, MS, 1000, 20, i % 2 == 0 ? 0 : 3);
+        }
+        assertEquals(Mode.FULL, controller.currentMode());
+    }
+
+    @Test
+    public void overBudgetStepsDownTwice() {
+        AdaptiveFilterController controller = new AdaptiveFilterController(clock);
+        controller.record(Mode.FULL, 50 * MS, 0, 20, 5);
+        assertEquals(Mode.PRESCAN, controller.currentMode());
+        controller.record(Mode.PRESCAN, 50 * MS, 0, 20, 0);
+        assertEquals(Mode.PASSTHROUGH, controller.currentMode());
+    }
+
+    @Test
+    public void passthroughRecoversAfterTimeout() {
+        AdaptiveFilterController controller = new AdaptiveFilterController(clock);
+        controller.record(Mode.FULL, 50 * MS, 0, 20, 5);
+        controller.record(Mode.PRESCAN, 50 * MS, 0, 20, 0);
+        assertEquals(Mode.PASSTHROUGH, controller.currentMode());
+
+        now += 29_999 * MS;
+        assertEquals(Mode.PASSTHROUGH, controller.currentMode());
+        now += MS;
+        assertEquals(Mode.PRESCAN, controller.currentMode());
+    }
+
+    @Test
+    public void prescanReturnsToFullWhenRowsAreDroppedAgain() {
+        AdaptiveFilterController controller = new AdaptiveFilterController(clock);
+        for (int i = 0; i < 5; i++) {
+            controller.record(Mode.FULL, MS, 0, 20, 0);
+        }
+        assertEquals(Mode.PRESCAN, controller.currentMode());
+
+        controller.record(Mode.PRESCAN, MS, 0, 20, 10);
+        assertEquals(Mode.FULL, controller.currentMode());
+    }
+
+    @Test
+    public void recordsFromAnotherModeAreIgnored() {
+        AdaptiveFilterController controller = new AdaptiveFilterController(clock);
+        controller.record(Mode.PRESCAN, 50 * MS, 0, 20, 0);
+        assertEquals(Mode.FULL, controller.currentMode());
+    }
+
+    @Test
+    public void disabledAlwaysRunsFull() {
+        Config.ADAPTIVE_FILTER_ENABLED = false;
+        AdaptiveFilterController controller = new AdaptiveFilterController(clock);
+        for (int i = 0; i < 10; i++) {
+            controller.record(Mode.FULL, 50 * MS, 0, 20, 0);
+        }
+        assertEquals(Mode.FULL, controller.currentMode());
+    }
+
+    @Test
+    public void prescanClearsStaleStats() {
+        int savedThreshold = Config.COMMENT_THRESHOLD;
+        Config.COMMENT_THRESHOLD = 5;
+        RuleSnapshot.recompile();
+        try {
+            FilterStats stats = new FilterStats();
+            stats.rows = 20;
+            stats.dropped = 15;
+            String page = "{\"data\":{\"rows\":[{\"article_id\":\"1\",\"article_comment\":\"9\"}]}}";
+            assertFalse(PrescanFilter.mayFilter(page, stats));
+            assertEquals(1, stats.rows);
+            assertEquals(0, stats.dropped);
+        } finally {
+            Config.COMMENT_THRESHOLD = savedThreshold;
+            RuleSnapshot.recompile();
+        }
+    }
+}
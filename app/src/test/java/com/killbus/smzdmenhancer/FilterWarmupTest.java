@@ -0,0 +1,92 @@
+package com.killbus.smzdmenhancer;
+
+import com.killbus.smzdmenhancer.utils.Metrics;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import static org.junit.Assert.*;
+
+/**
+ * Warm-up must exercise the hooked filter paths without touching shared state
+ */
+public class FilterWarmupTest {
+    private boolean savedDedup;
+    private boolean savedHideSeen;
+
+    @Before
+    public void setUp() {
+        savedDedup = Config.DEDUP_ENABLED;
+        savedHideSeen = Config.HIDE_SEEN_ARTICLES;
+        Config.DEDUP_ENABLED = true;
+        Config.HIDE_SEEN_ARTICLES = true;
+        RuleSnapshot.recompile();
+    }
+
+    @After
+    public void tearDown() {
+        Config.DEDUP_ENABLED = savedDedup;
+        Config.HIDE_SEEN_ARTICLES = savedHideSeen;
+        RuleSnapshot.recompile();
+    }
+
+    @Test
+    public void quietWarmUpLeavesNoTrace() throws Exception {
+        File dir = Files.createTempDirectory("warmup").toFile();
+        SeenArticleStore seen = SeenArticleStore.open(dir);
+        // Warm-up rows use IDs from 1, so the seen check drops one of them
+        seen.markSeen(1);
+        waitForLog(seen, new File(dir, "seen.log"));
+        NearDuplicateIndex dedup = NearDuplicateIndex.get();
+
+        int seenSize = seen.size();
+        int seenGeneration = seen.generation();
+        int dedupSize = dedup.size();
+        Metrics.reset();
+
+        FilterWarmup.warmUp();
+
+        assertEquals(seenSize, seen.size());
+        assertEquals(seenGeneration, seen.generation());
+        assertEquals(dedupSize, dedup.size());
+        // Memo, byte filter and String filter all report through metrics
+        assertTrue(Metrics.snapshot().toString(), Metrics.snapshot().isEmpty());
+        // The String hook must not mistake a later identical body for one the stream filtered
+        assertFalse(RowFilterInputStream.consumeEmitted(quietOutput()));
+    }
+
+    private static String quietOutput() throws Exception {
+        byte[] body = FilterWarmup.buildPayload(Config.WARMUP_ROWS).getBytes(StandardCharsets.UTF_8);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (InputStream in = new RowFilterInputStream(new ByteArrayInputStream(body), true)) {
+            byte[] buffer = new byte[4096];
+            int n;
+            while ((n = in.read(buffer, 0, buffer.length)) >= 0) {
+                out.write(buffer, 0, n);
+            }
+        }
+        String output = new String(out.toByteArray(), StandardCharsets.UTF_8);
+        assertNotEquals(FilterWarmup.buildPayload(Config.WARMUP_ROWS), output);
+        return output;
+    }
+
+    /**
+     * The writer loads the store before appending, so a logged ID means loading finished
+     */
+    private static void waitForLog(SeenArticleStore seen, File log) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (log.length() < 8) {
+            assertTrue("Seen store did not load", System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+        assertTrue(seen.contains(1));
+    }
+}
@@ -0,0 +1,82 @@
+package com.killbus.smzdmenhancer;
+
+import org.json.JSONObject;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.*;
+
+/**
+ * The byte scanner must read every field the way ArticleRow.readJson reads it through org.json
+ */
+public class JsonRowScannerTest {
+    // Spellings of a numeric field, as written in the JSON text
+    static final String[] VALUES = {
+        "0", "5", "\"5\"", "-3", "\"-3\"", "-0", "\"-0\"", "+5", "\"+5\"",
+        "5.0", "\"5.0\"", "5.9", "\"-5.9\"", "1e2", "\"1E2\"", ".5", "\"-.5\"",
+        "123456789", "1234567890", "\"1234567890\"", "12345678901", "\"12345678901\"",
+        "2147483647", "2147483648", "-2147483648", "-2147483649", "99999999999999999999",
+        "007", "\"007\"", "\" 5\"", "\"5 \"", "\"\\u0035\"", "\"５\"", "\"\"", "\"abc\"",
+        "true", "null", "{}", "[1]", "{\"article_comment\":9}",
+    };
+
+    @Test
+    public void numericFieldsMatchReadJson() throws Exception {
+        for (String value : VALUES) {
+            String json = "{\"article_id\":\"1\",\"article_comment\":" + value
+                + ",\"article_worthy\":" + value + ",\"article_unworthy\": " + value + " "
+                + ",\"article_channel_id\":" + value + "}";
+
+            ArticleRow expected = new ArticleRow();
+            expected.readJson(new JSONObject(json), false, false);
+            ArticleRow actual = scan(json);
+
+            assertEquals(value, expected.commentCount, actual.commentCount);
+            assertEquals(value, expected.worthy, actual.worthy);
+            assertEquals(value, expected.unworthy, actual.unworthy);
+            assertEquals(value, expected.channelId, actual.channelId);
+        }
+    }
+
+    @Test
+    public void textFieldsMatchReadJson() throws Exception {
+        String[] rows = {
+            "{\"article_id\":\"7\",\"article_title\":\"小米 \\\"Redmi\\\" K70\",\"article_price\":\"1,899元\"}",
+            "{\"article_id\":7,\"article_mall\":\"京东\"}",
+            "{}",
+        };
+        for (String json : rows) {
+            ArticleRow expected = new ArticleRow();
+            expected.readJson(new JSONObject(json), true, true);
+            byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+            ArticleRow actual = new ArticleRow();
+            assertTrue(json, JsonRowScanner.scan(bytes, bytes.length, actual, true, true));
+
+            assertEquals(json, expected.commentCount, actual.commentCount);
+            assertEquals(json, expected.articleId, actual.articleId);
+            assertEquals(json, expected.title, actual.title);
+            assertEquals(json, expected.price, actual.price);
+            assertEquals(json, expected.mall, actual.mall);
+            assertEquals(json, expected.priceCents, actual.priceCents);
+            assertEquals(json, expected.mallId, actual.mallId);
+        }
+    }
+
+    @Test
+    public void malformedRowsAreRejected() {
+        ArticleRow row = new ArticleRow();
+        String[] malformed = { "{\"article_worthy\":", "{\"article_worthy\" 5}", "[1]", "{\"article_worthy\":5" };
+        for (String json : malformed) {
+            byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+            assertFalse(json, JsonRowScanner.scan(bytes, bytes.length, row, true, true));
+        }
+    }
+
+    private static ArticleRow scan(String json) {
+        byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+        ArticleRow row = new ArticleRow();
+        assertTrue(json, JsonRowScanner.scan(bytes, bytes.length, row, false, true));
+        return row;
+    }
+}
@@ -0,0 +1,66 @@
+package com.killbus.smzdmenhancer;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class MallRegistryTest {
+
+    @Test
+    public void lookupIgnoresCaseAndSurroundingWhitespace() {
+        int jd = MallRegistry.intern("京东");
+        int tmall = MallRegistry.intern(" Tmall天猫 ");
+        assertEquals(jd, MallRegistry.intern("京东 "));
+        assertNotEquals(jd, tmall);
+
+        assertEquals(jd, MallRegistry.lookup("京东"));
+        assertEquals(jd, MallRegistry.lookup("\t京东 "));
+        assertEquals(tmall, MallRegistry.lookup("TMALL天猫"));
+        assertEquals(tmall, MallRegistry.lookup("tmall天猫"));
+        assertEquals(-1, MallRegistry.lookup("京东国际"));
+        assertEquals(-1, MallRegistry.lookup("   "));
+        assertEquals(-1, MallRegistry.lookup(""));
+        assertEquals(-1, MallRegistry.lookup(null));
+    }
+
+    @Test
+    public void idsSurviveTableGrowth() {
+        int[] ids = new int[100];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = MallRegistry.intern("Mall-" + i);
+        }
+        for (int i = 0; i < ids.length; i++) {
+            assertEquals(ids[i], MallRegistry.lookup("mall-" + i));
+        }
+    }
+
+    @Test
+    public void consumerCountsInternedNames() {
+        long before = MallRegistry.CONSUMER.estimatedBytes();
+        assertTrue(before > 0);
+        MallRegistry.intern("Counted-" + before);
+        assertTrue(MallRegistry.CONSUMER.estimatedBytes() > before);
+        // IDs are held by compiled rules, so trimming keeps them
+        MallRegistry.CONSUMER.trimTo(0);
+        assertTrue(MallRegistry.lookup("counted-" + before) >= 0);
+    }
+
+    @Test
+    public void matchesOnlyConfiguredMallsAmongRowValues() {
+        String[] configured = { "苏宁易购", "亚马逊中国", "唯品会" };
+        int[] ids = new int[configured.length];
+        for (int i = 0; i < configured.length; i++) {
+            ids[i] = MallRegistry.intern(configured[i]);
+        }
+        // Row values that share a prefix or suffix with a configured name
+        String[] others = { "苏宁", "苏宁易购超市", "亚马逊", "唯品会 特卖会", "小米有品", "考拉海购" };
+
+        for (int i = 0; i < configured.length; i++) {
+            assertEquals(ids[i], MallRegistry.lookup(configured[i]));
+            assertEquals(ids[i], MallRegistry.lookup(" " + configured[i] + "\t"));
+        }
+        for (String mall : others) {
+            assertEquals(mall, -1, MallRegistry.lookup(mall));
+        }
+    }
+}
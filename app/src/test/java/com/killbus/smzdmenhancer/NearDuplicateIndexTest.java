@@ -0,0 +1,265 @@
+package com.killbus.smzdmenhancer;
+
+import com.killbus.smzdmenhancer.utils.SimHash;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class NearDuplicateIndexTest {
+    private static final String[] BRANDS = {
+        "小米", "华为", "苹果", "索尼", "戴森", "美的", "格力", "海尔", "联想", "罗技",
+        "绿联", "安克", "三只松鼠", "良品铺子", "农夫山泉", "蓝月亮", "李宁", "安踏", "耐克", "阿迪达斯",
+        "优衣库", "九阳", "苏泊尔", "飞利浦", "松下", "TP-LINK", "Redmi", "OPPO", "vivo", "一加",
+    };
+    private static final String[] PRODUCTS = {
+        "无线降噪耳机", "机械键盘", "电动牙刷", "空气炸锅", "电饭煲", "吸尘器", "路由器", "充电宝",
+        "氮化镓充电器", "跑步鞋", "羽绒服", "坚果礼盒", "洗衣液", "保温杯", "显示器", "移动硬盘",
+        "智能手表", "蓝牙音箱", "剃须刀", "电热水壶",
+    };
+    private static final String[] SPECS = {
+        "2024新款", "Pro版", "旗舰款", "轻薄款", "标准版", "升级款", "大容量", "家用", "便携", "礼盒装",
+    };
+    private static final String[] VARIANTS = {
+        "黑色", "白色", "256GB", "1.5L", "65W", "20000mAh", "27英寸", "500ml", "XL码", "3kg",
+    };
+    // Price and marketing decorations that differ between reposts of the same deal
+    private static final String[] DECORATIONS = {
+        "包邮", "需用券", "到手价%d", "券后%d元", "史低", "历史低价", "%d元包邮", "¥%d",
+        "PLUS会员%d元", "满%d减%d", "需凑单", "限时秒杀", "好价", "￥%d.9",
+    };
+
+    private final int[] weights = new int[64];
+    private long now;
+
+    @Before
+    public void setUp() {
+        now = 0;
+    }
+
+    @Test
+    public void priceAndMarketingTokensDoNotChangeTheHash() {
+        long plain = SimHash.hash("小米手环8 NFC版", weights);
+        assertEquals(plain, SimHash.hash("小米 手环8 NFC版 ¥199 包邮", weights));
+        assertEquals(plain, SimHash.hash("历史低价！小米手环8 NFC版 到手价179元", weights));
+        assertEquals(plain, SimHash.hash("PLUS会员：小米手环8 NFC版，券后189元，满199减20", weights));
+        assertEquals(plain, SimHash.hash("小米手环8 NFC版 需用券 5.5折", weights));
+    }
+
+    @Test
+    public void modelNumbersAndSizesAreKept() {
+        assertNotEquals(SimHash.hash("Redmi K70", weights), SimHash.hash("Redmi K60", weights));
+        assertNotEquals(SimHash.hash("农夫山泉 550ml*24瓶", weights), SimHash.hash("农夫山泉 380ml*24瓶", weights));
+        assertNotEquals(SimHash.hash("三只松鼠 坚果 1.5kg", weights), SimHash.hash("三只松鼠 坚果 750g", weights));
+    }
+
+    @Test
+    public void everyHashWithinMaxHammingIsFound() {
+        NearDuplicateIndex index = new NearDuplicateIndex(2000, () -> now);
+        Random random = new Random(1);
+        long page = index.beginPage();
+        for (int i = 0; i < 2000; i++) {
+            long hash = random.nextLong() | 1;
+            assertEquals(NearDuplicateIndex.KEEP, index.offer(hash, i + 1, 0, page, -1));
+
+            long near = hash;
+            Set<Integer> flipped = new HashSet<>();
+            while (flipped.size() < Config.DEDUP_MAX_HAMMING) {
+                int bit = random.nextInt(64);
+                if (flipped.add(bit)) near ^= 1L << bit;
+            }
+            assertEquals(NearDuplicateIndex.DROP, index.offer(near, -(i + 1), 0, page, -1));
+        }
+    }
+
+    @Test
+    public void qualifierWordsAreDropped() {
+        long plain = SimHash.hash("LG 27英寸 显示器", weights);
+        assertEquals(plain, SimHash.hash("LG 国行 27英寸 显示器", weights));
+        assertEquals(plain, SimHash.hash("LG官方旗舰店 27英寸 显示器 正品", weights));
+        // A qualifier never takes the number after it with it
+        assertNotEquals(SimHash.hash("LG 国行 27英寸 显示器", weights), SimHash.hash("LG 国行 32英寸 显示器", weights));
+    }
+
+    /**
+     * Every offer checks a fixed number of bucket slots, so the cost per row does not grow with the window
+     */
+    @Test
+    public void probesPerOfferStayFlatAcrossWindowSizes() {
+        long[] perOffer = new long[2];
+        int[] windows = { 2000, 20000 };
+        for (int w = 0; w < windows.length; w++) {
+            NearDuplicateIndex index = new NearDuplicateIndex(windows[w], () -> now);
+            Random random = new Random(3);
+            long page = index.beginPage();
+            int offers = windows[w] * 2;
+            for (int i = 0; i < offers; i++) {
+                index.offer(random.nextLong() | 1, i + 1, 0, page, -1);
+            }
+            assertEquals(windows[w], index.size());
+            perOffer[w] = index.probes() / offers;
+        }
+        assertTrue("probes per offer " + perOffer[0], perOffer[0] <= 6 * 16);
+        assertEquals(perOffer[0], perOffer[1]);
+    }
+
+    @Test
+    public void trimmingKeepsTheNewestEntries() {
+        NearDuplicateIndex index = new NearDuplicateIndex(2000, () -> now);
+        Random random = new Random(5);
+        long page = index.beginPage();
+        long[] hashes = new long[2000];
+        for (int i = 0; i < hashes.length; i++) {
+            hashes[i] = random.nextLong() | 1;
+            index.offer(hashes[i], i + 1, 0, page, i);
+        }
+
+        long target = index.estimatedBytes() / 4;
+        NearDuplicateIndex trimmed = index.trimmedTo(target);
+        assertTrue(trimmed.estimatedBytes() <= target);
+        assertEquals(trimmed.capacity(), trimmed.size());
+        assertSame(trimmed, trimmed.trimmedTo(target));
+        // Newest entries are still matched, with their page rows; the oldest are gone
+        assertEquals(hashes.length - 1, trimmed.offer(hashes[hashes.length - 1], -1, 1, page, 0));
+        assertEquals(NearDuplicateIndex.KEEP, trimmed.offer(hashes[0], -2, 1, page, 1));
+        assertTrue(trimmed.beginPage() > page);
+
+        NearDuplicateIndex smallest = index.trimmedTo(0);
+        assertEquals(16, smallest.capacity());
+        assertEquals(NearDuplicateIndex.DROP, smallest.offer(hashes[hashes.length - 1], -3, 0, page, -1));
+    }
+
+    /**
+     * 10k titles: 2000 deals, each posted 5 times with different prices and marketing words
+     */
+    @Test
+    public void recallOnRepostedDeals() {
+        Random random = new Random(42);
+        List<String> deals = deals(random, 2000);
+        NearDuplicateIndex index = new NearDuplicateIndex(deals.size() * 5, () -> now);
+        double[] result = replay(index, deals, random, weights);
+        assertTrue("recall " + result[0], result[0] > 0.98);
+        // Colour and size variants of one product ("黑色" / "白色") are close enough to merge
+        assertTrue("first posts kept " + result[1], result[1] > 0.95);
+    }
+
+    /**
+     * Offer 5 decorated posts of every deal, in random order, to an index
+     *
+     * @return Recall on reposts and share of first posts kept.
+     */
+    static double[] replay(NearDuplicateIndex index, List<String> deals, Random random, int[] weights) {
+        List<Integer> order = new ArrayList<>();
+        for (int i = 0; i < deals.size() * 5; i++) order.add(i);
+        Collections.shuffle(order, random);
+
+        boolean[] shown = new boolean[deals.size()];
+        int reposts = 0;
+        int caught = 0;
+        int firstKept = 0;
+        long page = index.beginPage();
+        for (int post : order) {
+            int deal = post / 5;
+            long hash = SimHash.hash(decorate(deals.get(deal), random), weights);
+            int verdict = index.offer(hash, post + 1, 0, page, -1);
+            if (shown[deal]) {
+                reposts++;
+                if (verdict == NearDuplicateIndex.DROP) caught++;
+            } else {
+                shown[deal] = true;
+                if (verdict == NearDuplicateIndex.KEEP) firstKept++;
+            }
+        }
+        return new double[] { (double) caught / reposts, (double) firstKept / deals.size() };
+    }
+
+    /**
+     * Reposts that add a sales-channel qualifier to one word ("小米官方", "国行 无线降噪耳机")
+     */
+    @Test
+    public void recallOnReworded() {
+        Random random = new Random(7);
+        List<String> deals = deals(random, 2000);
+        String[] fillers = { "官方", "正品", "国行", "自营", "新品", "旗舰店" };
+        int caught = 0;
+        for (String deal : deals) {
+            String[] words = deal.split(" ");
+            int word = random.nextInt(words.length);
+            String filler = fillers[random.nextInt(fillers.length)];
+            words[word] = random.nextBoolean() ? words[word] + filler : filler + " " + words[word];
+            String reworded = decorate(String.join(" ", words), random);
+            int distance = SimHash.distance(SimHash.hash(deal, weights), SimHash.hash(reworded, weights));
+            if (distance <= Config.DEDUP_MAX_HAMMING) caught++;
+        }
+        double recall = (double) caught / deals.size();
+        assertTrue("recall " + recall, recall >= 0.99);
+    }
+
+    /**
+     * Deals of another brand or another product must rarely land within the threshold
+     */
+    @Test
+    public void falseMergesStayRare() {
+        Random random = new Random(11);
+        int pairs = 4000;
+        int merged = 0;
+        for (int i = 0; i < pairs; i++) {
+            int brand = random.nextInt(BRANDS.length);
+            int product = random.nextInt(PRODUCTS.length);
+            String spec = SPECS[random.nextInt(SPECS.length)];
+            String variant = VARIANTS[random.nextInt(VARIANTS.length)];
+            int otherBrand = brand;
+            int otherProduct = product;
+            if (i % 2 == 0) {
+                while (otherBrand == brand) otherBrand = random.nextInt(BRANDS.length);
+            } else {
+                while (otherProduct == product) otherProduct = random.nextInt(PRODUCTS.length);
+            }
+            String a = decorate(BRANDS[brand] + " " + spec + " " + PRODUCTS[product] + " " + variant, random);
+            String b = decorate(BRANDS[otherBrand] + " " + spec + " " + PRODUCTS[otherProduct] + " " + variant, random);
+            if (SimHash.distance(SimHash.hash(a, weights), SimHash.hash(b, weights)) <= Config.DEDUP_MAX_HAMMING) {
+                merged++;
+            }
+        }
+        double rate = (double) merged / pairs;
+        assertTrue("false merges " + rate, rate < 0.02);
+    }
+
+    static List<String> deals(Random random, int count) {
+        Set<String> unique = new HashSet<>();
+        List<String> deals = new ArrayList<>();
+        while (deals.size() < count) {
+            String deal = BRANDS[random.nextInt(BRANDS.length)] + " " + SPECS[random.nextInt(SPECS.length)]
+                + " " + PRODUCTS[random.nextInt(PRODUCTS.length)] + " " + VARIANTS[random.nextInt(VARIANTS.length)];
+            if (unique.add(deal)) deals.add(deal);
+        }
+        return deals;
+    }
+
+    static String decorate(String title, Random random) {
+        StringBuilder out = new StringBuilder();
+        if (random.nextBoolean()) {
+            out.append(decoration(random)).append(random.nextBoolean() ? " " : "！");
+        }
+        out.append(random.nextInt(4) == 0 ? title.replace(" ", "") : title);
+        int extra = random.nextInt(3);
+        for (int i = 0; i < extra; i++) {
+            out.append(random.nextBoolean() ? " " : "，").append(decoration(random));
+        }
+        return out.toString();
+    }
+
+    private static String decoration(Random random) {
+        String template = DECORATIONS[random.nextInt(DECORATIONS.length)];
+        return template.replaceFirst("%d", Integer.toString(10 + random.nextInt(3000)))
+            .replaceFirst("%d", Integer.toString(5 + random.nextInt(100)));
+    }
+}
@@ -0,0 +1,38 @@
+package com.killbus.smzdmenhancer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * /home/list response bodies from app/src/test/resources
+ */
+final class Payloads {
+    /**
+     * Hand-written page in the /home/list response shape, not a capture
+     * 20 rows with IDs stepping by 137 from 88000000, sample Chinese titles and prices,
+     * and comment counts cycling through 0, 1, 2, 5, 12 and 37
+     */
+    static final String SYNTHETIC_HOME_LIST_PAGE = "synthetic_home_list_page.json";
+
+    private Payloads() {
+    }
+
+    static byte[] bytes(String name) throws IOException {
+        try (InputStream in = Payloads.class.getClassLoader().getResourceAsStream(name)) {
+            if (in == null) throw new IOException("Missing test resource " + name);
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int n;
+            while ((n = in.read(buffer)) > 0) {
+                out.write(buffer, 0, n);
+            }
+            return out.toByteArray();
+        }
+    }
+
+    static String string(String name) throws IOException {
+        return new String(bytes(name), StandardCharsets.UTF_8);
+    }
+}
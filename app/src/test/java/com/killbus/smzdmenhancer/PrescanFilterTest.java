@@ -0,0 +1,68 @@
+package com.killbus.smzdmenhancer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * The pre-scan must never skip a page the full filter would change
+ */
+public class PrescanFilterTest {
+    // article_comment values as written in the JSON, quoted or bare
+    private static final String[] COMMENTS = {
+        "\"9\"", "\"2\"", "9", "2", "\"5.0\"", "5.0", "\"007\"", "007", "\"+7\"", "\" 7\"", "\"7 \"",
+        "\"abc\"", "\"\"", "null", "true", "\"-3\"", "-3", "\"2147483647\"", "\"2147483648\"", "3000000000",
+        "\"99999999999\"", "\"-2147483648\"", "1e3", "\"1e3\"", "\"\\u0039\"", "\"\\u0032\"", "\"９\"",
+    };
+
+    private int savedThreshold;
+
+    @Before
+    public void setUp() {
+        Config.DEBUG_MODE = false;
+        Config.ENABLE_LOGGING = false;
+        savedThreshold = Config.COMMENT_THRESHOLD;
+        Config.COMMENT_THRESHOLD = 5;
+        RuleSnapshot.recompile();
+    }
+
+    @After
+    public void tearDown() {
+        Config.COMMENT_THRESHOLD = savedThreshold;
+        RuleSnapshot.recompile();
+    }
+
+    @Test
+    public void agreesWithTheFullFilter() {
+        for (String comment : COMMENTS) {
+            String page = "{\"data\":{\"rows\":[{\"article_id\":\"1\",\"article_comment\": " + comment + "}]}}";
+            boolean filtered = ArticleFilter.filterJsonResponse(page) != null;
+            boolean mayFilter = PrescanFilter.mayFilter(page, new FilterStats());
+            if (comment.contains("\\")) {
+                // Escapes are left to the full filter
+                assertTrue(comment, mayFilter);
+            } else {
+                assertEquals(comment, filtered, mayFilter);
+            }
+        }
+    }
+
+    @Test
+    public void parsesLikeIntegerParseInt() {
+        String[] values = {
+            "0", "7", "-7", "+7", "007", "2147483647", "2147483648", "-2147483648", "-2147483649",
+            "", "-", "+", "5.0", " 7", "1e3", "abc", "9999999999", "٣", "９",
+        };
+        for (String value : values) {
+            int expected;
+            try {
+                expected = Integer.parseInt(value);
+            } catch (NumberFormatException e) {
+                expected = 0;
+            }
+            assertEquals(value, expected, JsonNumbers.parseIntOrZero(value, 0, value.length()));
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package com.killbus.smzdmenhancer;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class PriceExtractorTest {
+    // Titles and price fields in the shape the feed delivers them
+    static final String[][] ROWS = {
+        { "Apple iPhone 15 Pro 256GB 暗夜紫 5G手机", "7999元（需用券）" },
+        { "历史低价：小米 Redmi K70 12+256GB 晴雪 到手价", "1,899元包邮" },
+        { "绿联 65W 氮化镓充电器 三口快充", "¥89" },
+        { "史低！三只松鼠 坚果礼盒 1.5kg 年货", "69.9元" },
+        { "索尼 WH-1000XM5 无线降噪耳机 5.5折", "1499元" },
+        { "良品铺子 猪肉脯 200g*2袋 需凑单", "" },
+        { "京东京造 人体工学椅 Z7 Pro", "￥1,099.00" },
+        { "农夫山泉 饮用天然水 550ml*24瓶 整箱", "24.9元 包邮" },
+    };
+
+    @Test
+    public void extractsPriceFromPriceField() {
+        ArticleRow row = extract(ROWS[1]);
+        assertEquals(189900, row.priceCents);
+        assertTrue(row.historicalLow);
+
+        row = extract(ROWS[7]);
+        assertEquals(2490, row.priceCents);
+        assertFalse(row.historicalLow);
+    }
+
+    @Test
+    public void extractsCurrencyPrefixedPrice() {
+        assertEquals(8900, extract(ROWS[2]).priceCents);
+    }
+
+    @Test
+    public void extractsDiscountFromTitle() {
+        ArticleRow row = extract(ROWS[4]);
+        assertEquals(55, row.discountTenths);
+        assertEquals(149900, row.priceCents);
+    }
+
+    @Test
+    public void titleWithoutPriceLeavesPriceUnset() {
+        ArticleRow row = extract(ROWS[5]);
+        assertEquals(-1, row.priceCents);
+        assertEquals(-1, row.discountTenths);
+    }
+
+    @Test
+    public void extractsEveryRow() {
+        // priceCents, discountTenths, historicalLow per row of ROWS
+        int[][] expected = {
+            { 799900, -1, 0 },
+            { 189900, -1, 1 },
+            { 8900, -1, 0 },
+            { 6990, -1, 1 },
+            { 149900, 55, 0 },
+            { -1, -1, 0 },
+            { 109900, -1, 0 },
+            { 2490, -1, 0 },
+        };
+        ArticleRow row = new ArticleRow();
+        for (int i = 0; i < ROWS.length; i++) {
+            fill(row, ROWS[i]);
+            assertEquals(ROWS[i][0], expected[i][0], row.priceCents);
+            assertEquals(ROWS[i][0], expected[i][1], row.discountTenths);
+            assertEquals(ROWS[i][0], expected[i][2] == 1, row.historicalLow);
+        }
+    }
+
+    private static ArticleRow extract(String[] fields) {
+        ArticleRow row = new ArticleRow();
+        fill(row, fields);
+        return row;
+    }
+
+    static int fill(ArticleRow row, String[] fields) {
+        row.reset();
+        row.title = fields[0];
+        row.price = fields[1];
+        row.mall = "京东";
+        row.extractPriceFields();
+        return row.priceCents + row.discountTenths + row.mallId;
+    }
+}
@@ -0,0 +1,83 @@
+package com.killbus.smzdmenhancer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ResponseMemoTest {
+    private boolean savedDedup;
+
+    @Before
+    public void setUp() {
+        Config.DEBUG_MODE = false;
+        Config.ENABLE_LOGGING = false;
+        savedDedup = Config.DEDUP_ENABLED;
+    }
+
+    @After
+    public void tearDown() {
+        Config.DEDUP_ENABLED = savedDedup;
+        RuleSnapshot.recompile();
+    }
+
+    @Test
+    public void repeatedBodyHits() {
+        Config.DEDUP_ENABLED = false;
+        RuleSnapshot.recompile();
+        ResponseMemo memo = new ResponseMemo(100_000);
+        String body = "{\"data\":{\"rows\":[]}}";
+
+        assertNull(memo.get(ResponseMemo.keyOf(body)));
+        memo.put(ResponseMemo.keyOf(body), ResponseMemo.NO_CHANGE);
+        assertSame(ResponseMemo.NO_CHANGE, memo.get(ResponseMemo.keyOf(new String(body))));
+    }
+
+    @Test
+    public void recompiledRulesMiss() {
+        Config.DEDUP_ENABLED = false;
+        RuleSnapshot.recompile();
+        ResponseMemo memo = new ResponseMemo(100_000);
+        String body = "{\"data\":{\"rows\":[]}}";
+        memo.put(ResponseMemo.keyOf(body), "filtered");
+
+        RuleSnapshot.recompile();
+        assertNull(memo.get(ResponseMemo.keyOf(body)));
+    }
+
+    @Test
+    public void dedupBypassesTheMemo() {
+        Config.DEDUP_ENABLED = true;
+        RuleSnapshot.recompile();
+        assertNull(ResponseMemo.keyOf("{\"data\":{\"rows\":[]}}"));
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsed() {
+        Config.DEDUP_ENABLED = false;
+        RuleSnapshot.recompile();
+        ResponseMemo memo = new ResponseMemo(1000);
+        String[] bodies = new String[8];
+        for (int i = 0; i < bodies.length; i++) {
+            bodies[i] = "{\"page\":" + i + "}";
+            memo.put(ResponseMemo.keyOf(bodies[i]), pad(150));
+            // Keep the first body recently used
+            assertNotNull(memo.get(ResponseMemo.keyOf(bodies[0])));
+        }
+        assertTrue(memo.totalChars() <= 1000);
+        assertNotNull(memo.get(ResponseMemo.keyOf(bodies[0])));
+        assertNull(memo.get(ResponseMemo.keyOf(bodies[1])));
+        assertNotNull(memo.get(ResponseMemo.keyOf(bodies[7])));
+
+        memo.trimTo(0);
+        assertEquals(0, memo.size());
+        assertEquals(0, memo.estimatedBytes());
+    }
+
+    private static String pad(int length) {
+        StringBuilder out = new StringBuilder();
+        while (out.length() < length) out.append('x');
+        return out.toString();
+    }
+}
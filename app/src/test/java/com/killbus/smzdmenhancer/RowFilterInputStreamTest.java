@@ -0,0 +1,216 @@
+package com.killbus.smzdmenhancer;
+
+import com.sun.net.httpserver.HttpServer;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.*;
+
+/**
+ * Streams a synthetic /home/list page from a local HTTP server through the byte-level filter
+ */
+public class RowFilterInputStreamTest {
+    private HttpServer server;
+    private byte[] page;
+
+    @Before
+    public void setUp() throws IOException {
+        Config.DEBUG_MODE = false;
+        Config.ENABLE_LOGGING = false;
+        page = Payloads.bytes(Payloads.SYNTHETIC_HOME_LIST_PAGE);
+
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/home/list", exchange -> {
+            exchange.getResponseHeaders().set("Content-Type", "application/json;charset=UTF-8");
+            // Chunked, in pieces small enough to split rows and multi-byte characters
+            exchange.sendResponseHeaders(200, 0);
+            try (OutputStream out = exchange.getResponseBody()) {
+                for (int i = 0; i < page.length; i += 7) {
+                    out.write(page, i, Math.min(7, page.length - i));
+                    out.flush();
+                }
+            }
+        });
+        server.start();
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    @Test
+    public void keepsTheSameRowsAsTheStringFilter() throws Exception {
+        String filtered = fetchFiltered();
+        RowFilterInputStream.consumeEmitted(filtered);
+
+        FilterStats stats = new FilterStats();
+        stats.quiet = true;
+        String expected = ArticleFilter.filterJsonResponse(new String(page, StandardCharsets.UTF_8), stats);
+        assertNotNull(expected);
+
+        JSONObject actualRoot = new JSONObject(filtered);
+        JSONObject expectedRoot = new JSONObject(expected);
+        assertEquals(expectedRoot.optString("error_code"), actualRoot.optString("error_code"));
+        assertEquals(ids(expectedRoot), ids(actualRoot));
+        assertEquals(20, actualRoot.getJSONObject("data").optInt("total", 0));
+    }
+
+    @Test
+    public void matchesTheStringFilterUnderEachRule() throws Exception {
+        String[] expressions = {
+            "", "worthy - unworthy > 10", "channel != 3 && comments >= 5", "price < 500", "worthy > 1000",
+        };
+        int savedMaxPrice = Config.MAX_PRICE_YUAN;
+        try {
+            for (int maxPrice : new int[] { 0, 1000 }) {
+                Config.MAX_PRICE_YUAN = maxPrice;
+                for (String expression : expressions) {
+                    Config.RULE_EXPRESSION = expression;
+                    RuleSnapshot.recompile();
+                    assertSameRows(maxPrice + " " + expression, page);
+                }
+            }
+        } finally {
+            Config.MAX_PRICE_YUAN = savedMaxPrice;
+            Config.RULE_EXPRESSION = "";
+            RuleSnapshot.recompile();
+        }
+    }
+
+    @Test
+    public void matchesTheStringFilterOnEdgeValues() throws Exception {
+        StringBuilder sb = new StringBuilder("{\"data\":{\"rows\":[");
+        String[] values = JsonRowScannerTest.VALUES;
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) sb.append(',');
+            sb.append("{\"article_id\":\"").append(i + 1).append('"')
+                .append(",\"article_comment\":").append(values[i])
+                .append(",\"article_worthy\":").append(values[(i + 7) % values.length])
+                .append(",\"article_channel_id\":").append(values[(i + 3) % values.length]).append('}');
+        }
+        sb.append("]}}");
+        byte[] body = sb.toString().getBytes(StandardCharsets.UTF_8);
+
+        try {
+            Config.RULE_EXPRESSION = "worthy > 4 || channel == 5";
+            RuleSnapshot.recompile();
+            assertSameRows("edge values", body);
+        } finally {
+            Config.RULE_EXPRESSION = "";
+            RuleSnapshot.recompile();
+        }
+    }
+
+    @Test
+    public void buffersAreCountedUntilTheBodyEndsOrTheStreamCloses() throws Exception {
+        long before = RowFilterInputStream.BUFFER_CONSUMER.estimatedBytes();
+        InputStream drained = new RowFilterInputStream(new ByteArrayInputStream(page));
+        assertTrue(RowFilterInputStream.BUFFER_CONSUMER.estimatedBytes() >= before + 24 * 1024);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1000];
+        int n;
+        while ((n = drained.read(buffer)) >= 0) {
+            out.write(buffer, 0, n);
+        }
+        assertEquals(before, RowFilterInputStream.BUFFER_CONSUMER.estimatedBytes());
+        drained.close();
+        assertEquals(before, RowFilterInputStream.BUFFER_CONSUMER.estimatedBytes());
+        // Leave no fingerprint behind for the other tests
+        assertTrue(RowFilterInputStream.consumeEmitted(new String(out.toByteArray(), StandardCharsets.UTF_8)));
+
+        InputStream abandoned = new RowFilterInputStream(new ByteArrayInputStream(page));
+        assertTrue(abandoned.read(buffer) > 0);
+        assertTrue(RowFilterInputStream.BUFFER_CONSUMER.estimatedBytes() > before);
+        abandoned.close();
+        assertEquals(before, RowFilterInputStream.BUFFER_CONSUMER.estimatedBytes());
+    }
+
+    @Test
+    public void emittedBodyIsRecognizedOnce() throws Exception {
+        String filtered = fetchFiltered();
+        assertTrue(RowFilterInputStream.consumeEmitted(filtered));
+        assertFalse(RowFilterInputStream.consumeEmitted(filtered));
+    }
+
+    @Test
+    public void bodiesThatBypassedTheStreamAreNotRecognized() throws Exception {
+        String filtered = fetchFiltered();
+        assertFalse(RowFilterInputStream.consumeEmitted(new String(page, StandardCharsets.UTF_8)));
+        assertFalse(RowFilterInputStream.consumeEmitted(filtered.replace("京东", "天猫")));
+        assertTrue(RowFilterInputStream.consumeEmitted(filtered));
+    }
+
+    @Test
+    public void logsOutsideXposed() throws Exception {
+        Config.DEBUG_MODE = true;
+        Config.ENABLE_LOGGING = true;
+        try {
+            String filtered = fetchFiltered();
+            assertTrue(RowFilterInputStream.consumeEmitted(filtered));
+        } finally {
+            Config.DEBUG_MODE = false;
+            Config.ENABLE_LOGGING = false;
+        }
+    }
+
+    private String fetchFiltered() throws IOException {
+        URL url = new URL("http://127.0.0.1:" + server.getAddress().getPort() + "/home/list");
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        try (InputStream in = new RowFilterInputStream(connection.getInputStream())) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[1000];
+            int n;
+            while ((n = in.read(buffer)) > 0) {
+                out.write(buffer, 0, n);
+            }
+            return new String(out.toByteArray(), StandardCharsets.UTF_8);
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    private static void assertSameRows(String message, byte[] body) throws Exception {
+        FilterStats expectedStats = new FilterStats();
+        expectedStats.quiet = true;
+        String expected = ArticleFilter.filterJsonResponse(new String(body, StandardCharsets.UTF_8), expectedStats);
+        if (expected == null) expected = new String(body, StandardCharsets.UTF_8);
+
+        RowFilterInputStream in = new RowFilterInputStream(new ByteArrayInputStream(body));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        int c;
+        while ((c = in.read()) >= 0) {
+            out.write(c);
+        }
+        String actual = new String(out.toByteArray(), StandardCharsets.UTF_8);
+        RowFilterInputStream.consumeEmitted(actual);
+
+        assertEquals(message, ids(new JSONObject(expected)), ids(new JSONObject(actual)));
+        assertEquals(message, expectedStats.rows, in.stats().rows);
+        assertEquals(message, expectedStats.dropped, in.stats().dropped);
+    }
+
+    private static String ids(JSONObject root) throws Exception {
+        JSONArray rows = root.getJSONObject("data").getJSONArray("rows");
+        StringBuilder ids = new StringBuilder();
+        for (int i = 0; i < rows.length(); i++) {
+            ids.append(rows.getJSONObject(i).optString("article_id")).append(',');
+        }
+        return ids.toString();
+    }
+}
@@ -0,0 +1,433 @@
+package com.killbus.smzdmenhancer;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks compiled expressions against a direct evaluation of randomly generated expressions
+ */
+public class RuleExpressionTest {
+    private static final String[] INT_FIELDS = { "comments", "worthy", "unworthy", "channel" };
+
+    private final Random random = new Random(20240601);
+    private ArticleRow[] rows;
+
+    @Before
+    public void setUp() {
+        Config.DEBUG_MODE = false;
+        Config.ENABLE_LOGGING = false;
+        rows = new ArticleRow[64];
+        for (int i = 0; i < rows.length; i++) {
+            rows[i] = randomRow();
+        }
+    }
+
+    @Test
+    public void manyConstantsAndTemporaries() {
+        String source = "(comments + worthy + unworthy + channel + comments + worthy + unworthy + channel) > 3"
+            + " && comments > 1";
+        RuleExpression expression = RuleExpression.compile(source);
+        for (ArticleRow row : rows) {
+            int sum = 2 * (row.commentCount + row.worthy + row.unworthy + row.channelId);
+            assertEquals(sum > 3 && row.commentCount > 1, expression.matches(row));
+        }
+
+        StringBuilder wide = new StringBuilder("comments");
+        for (int i = 0; i < 40; i++) {
+            wide.append(" + ").append(i).append(" * worthy - ").append(i).append(".5");
+        }
+        RuleExpression wideExpression = RuleExpression.compile(wide + " > 0");
+        for (ArticleRow row : rows) {
+            double value = row.commentCount;
+            for (int i = 0; i < 40; i++) {
+                value = value + i * row.worthy - (i + 0.5);
+            }
+            assertEquals(value > 0, wideExpression.matches(row));
+        }
+    }
+
+    @Test
+    public void constantOperandsFold() {
+        assertTrue(RuleParser.parse("comments > 1 && false").isConst());
+        assertTrue(RuleParser.parse("comments > 1 || true").isConst());
+        assertTrue(RuleParser.parse("false && comments > 1").isConst());
+        assertFalse(RuleParser.parse("comments > 1 && true").isConst());
+        for (ArticleRow row : rows) {
+            assertFalse(RuleExpression.compile("comments > 1 && false").matches(row));
+            assertTrue(RuleExpression.compile("comments > 1 || true").matches(row));
+        }
+    }
+
+    @Test
+    public void negativeZeroIsInTheSet() {
+        ArticleRow row = randomRow();
+        assertTrue(RuleExpression.compile("-0.0 in {0}").matches(row));
+        assertTrue(RuleExpression.compile("comments * -0.0 in {0, 1}").matches(row));
+        assertTrue(RuleExpression.compile("0 in {-0}").matches(row));
+    }
+
+    @Test
+    public void matchesDirectEvaluationOnRandomExpressions() {
+        for (int n = 0; n < 3000; n++) {
+            Expr expr = bool(4);
+            RuleExpression compiled;
+            try {
+                compiled = RuleExpression.compile(expr.source);
+            } catch (IllegalArgumentException e) {
+                throw new AssertionError("Rejected " + expr.source, e);
+            }
+            for (ArticleRow row : rows) {
+                if (expr.test(row) != compiled.matches(row)) {
+                    fail("Mismatch for " + expr.source + " on comments=" + row.commentCount
+                        + " worthy=" + row.worthy + " unworthy=" + row.unworthy + " channel=" + row.channelId
+                        + " priceCents=" + row.priceCents + " discountTenths=" + row.discountTenths
+                        + " historicalLow=" + row.historicalLow);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void rejectsExpressionsNestedTooDeeply() {
+        int depth = RuleParser.MAX_DEPTH;
+        // The operand inside the parentheses is one more level
+        RuleExpression deepest = RuleExpression.compile(repeat("(", depth - 1) + "comments > 1" + repeat(")", depth - 1));
+        assertEquals(rows[0].commentCount > 1, deepest.matches(rows[0]));
+        String[] tooDeep = {
+            repeat("(", depth + 1) + "comments > 1" + repeat(")", depth + 1),
+            repeat("!", depth + 1) + "true",
+            "comments > " + repeat("-", depth + 1) + "1",
+            repeat("max(1, ", depth + 1) + "comments" + repeat(")", depth + 1) + " > 1",
+            "comments" + repeat(" + worthy", depth + 1) + " > 1",
+            "comments > 1" + repeat(" && worthy > 1", depth + 1),
+            repeat("(", 100_000) + "comments > 1" + repeat(")", 100_000),
+        };
+        for (String source : tooDeep) {
+            try {
+                RuleExpression.compile(source);
+                fail("Accepted " + source);
+            } catch (IllegalArgumentException e) {
+                assertTrue(e.getMessage(), e.getMessage().startsWith("Expression nested deeper than"));
+            }
+        }
+    }
+
+    @Test
+    public void snapshotIgnoresExpressionNestedTooDeeply() {
+        String saved = Config.RULE_EXPRESSION;
+        try {
+            Config.RULE_EXPRESSION = repeat("(", 100_000) + "comments > 1" + repeat(")", 100_000);
+            assertFalse(RuleSnapshot.recompile().hasExpression());
+        } finally {
+            Config.RULE_EXPRESSION = saved;
+            RuleSnapshot.recompile();
+        }
+    }
+
+    @Test
+    public void matchesHandWrittenCheck() {
+        RuleExpression expression = RuleExpression.compile(
+            "channel in {1, 80} && comments >= 3 && wilson(worthy, unworthy) > 0.6");
+        int matched = 0;
+        for (int i = 0; i < 1000; i++) {
+            ArticleRow row = randomRow();
+            assertEquals(handWritten(row), expression.matches(row));
+            if (handWritten(row)) matched++;
+        }
+        assertTrue(matched > 0);
+    }
+
+    private static String repeat(String s, int count) {
+        StringBuilder sb = new StringBuilder(s.length() * count);
+        for (int i = 0; i < count; i++) {
+            sb.append(s);
+        }
+        return sb.toString();
+    }
+
+    static boolean handWritten(ArticleRow row) {
+        return (row.channelId == 1 || row.channelId == 80)
+            && row.commentCount >= 3
+            && RuleParser.wilson(row.worthy, row.unworthy) > 0.6;
+    }
+
+    // ========== Random expressions with their own evaluator ==========
+
+    private abstract static class Expr {
+        final String source;
+        final int type;
+
+        Expr(String source, int type) {
+            this.source = source;
+            this.type = type;
+        }
+
+        boolean test(ArticleRow row) {
+            throw new UnsupportedOperationException();
+        }
+
+        int intValue(ArticleRow row) {
+            throw new UnsupportedOperationException();
+        }
+
+        double doubleValue(ArticleRow row) {
+            return type == RuleParser.INT ? intValue(row) : Double.NaN;
+        }
+    }
+
+    private Expr bool(int depth) {
+        int choice = random.nextInt(depth > 0 ? 8 : 3);
+        switch (choice) {
+            case 0: {
+                final boolean value = random.nextBoolean();
+                return new Expr(Boolean.toString(value), RuleParser.BOOL) {
+                    @Override
+                    boolean test(ArticleRow row) {
+                        return value;
+                    }
+                };
+            }
+            case 1:
+                return new Expr("historical_low", RuleParser.BOOL) {
+                    @Override
+                    boolean test(ArticleRow row) {
+                        return row.historicalLow;
+                    }
+                };
+            case 2:
+            case 3:
+                return comparison(number(Math.max(0, depth - 1)), number(Math.max(0, depth - 1)));
+            case 4:
+                return in(number(depth - 1));
+            case 5: {
+                final Expr operand = bool(depth - 1);
+                return new Expr("!(" + operand.source + ")", RuleParser.BOOL) {
+                    @Override
+                    boolean test(ArticleRow row) {
+                        return !operand.test(row);
+                    }
+                };
+            }
+            case 6: {
+                final Expr left = bool(depth - 1);
+                final Expr right = bool(depth - 1);
+                final boolean equal = random.nextBoolean();
+                return new Expr("(" + left.source + ") " + (equal ? "==" : "!=") + " (" + right.source + ")",
+                        RuleParser.BOOL) {
+                    @Override
+                    boolean test(ArticleRow row) {
+                        return (left.test(row) == right.test(row)) == equal;
+                    }
+                };
+            }
+            default: {
+                final Expr left = bool(depth - 1);
+                final Expr right = bool(depth - 1);
+                final boolean and = random.nextBoolean();
+                return new Expr("(" + left.source + (and ? " && " : " || ") + right.source + ")", RuleParser.BOOL) {
+                    @Override
+                    boolean test(ArticleRow row) {
+                        return and ? left.test(row) && right.test(row) : left.test(row) || right.test(row);
+                    }
+                };
+            }
+        }
+    }
+
+    private Expr comparison(final Expr left, final Expr right) {
+        final String op = new String[] { "==", "!=", "<", "<=", ">", ">=" }[random.nextInt(6)];
+        final boolean ints = left.type == RuleParser.INT && right.type == RuleParser.INT;
+        return new Expr("(" + left.source + " " + op + " " + right.source + ")", RuleParser.BOOL) {
+            @Override
+            boolean test(ArticleRow row) {
+                if (ints) {
+                    int a = left.intValue(row);
+                    int b = right.intValue(row);
+                    switch (op) {
+                        case "==": return a == b;
+                        case "!=": return a != b;
+                        case "<": return a < b;
+                        case "<=": return a <= b;
+                        case ">": return a > b;
+                        default: return a >= b;
+                    }
+                }
+                double a = left.doubleValue(row);
+                double b = right.doubleValue(row);
+                switch (op) {
+                    case "==": return a == b;
+                    case "!=": return a != b;
+                    case "<": return a < b;
+                    case "<=": return a <= b;
+                    case ">": return a > b;
+                    default: return a >= b;
+                }
+            }
+        };
+    }
+
+    private Expr in(final Expr operand) {
+        final double[] set = new double[1 + random.nextInt(10)];
+        StringBuilder source = new StringBuilder("(" + operand.source + " in {");
+        for (int i = 0; i < set.length; i++) {
+            set[i] = random.nextInt(4) == 0 ? random.nextInt(40) / 4.0 - 2 : random.nextInt(12) - 2;
+            if (i > 0) source.append(", ");
+            source.append(literal(set[i]));
+        }
+        source.append("})");
+        return new Expr(source.toString(), RuleParser.BOOL) {
+            @Override
+            boolean test(ArticleRow row) {
+                double value = operand.doubleValue(row);
+                for (double candidate : set) {
+                    if (candidate == value) return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    private Expr number(int depth) {
+        int choice = random.nextInt(depth > 0 ? 9 : 3);
+        switch (choice) {
+            case 0: {
+                final int value = random.nextInt(20);
+                return new Expr(Integer.toString(value), RuleParser.INT) {
+                    @Override
+                    int intValue(ArticleRow row) {
+                        return value;
+                    }
+                };
+            }
+            case 1: {
+                if (random.nextBoolean()) {
+                    final double value = random.nextInt(80) / 8.0;
+                    return new Expr(literal(value) + (value == (int) value ? ".0" : ""), RuleParser.DOUBLE) {
+                        @Override
+                        double doubleValue(ArticleRow row) {
+                            return value;
+                        }
+                    };
+                }
+                final boolean price = random.nextBoolean();
+                return new Expr(price ? "price" : "discount", RuleParser.DOUBLE) {
+                    @Override
+                    double doubleValue(ArticleRow row) {
+                        if (price) return row.priceCents < 0 ? -1 : row.priceCents / 100.0;
+                        return row.discountTenths < 0 ? -1 : row.discountTenths / 10.0;
+                    }
+                };
+            }
+            case 2: {
+                final int field = random.nextInt(INT_FIELDS.length);
+                return new Expr(INT_FIELDS[field], RuleParser.INT) {
+                    @Override
+                    int intValue(ArticleRow row) {
+                        switch (field) {
+                            case 0: return row.commentCount;
+                            case 1: return row.worthy;
+                            case 2: return row.unworthy;
+                            default: return row.channelId;
+                        }
+                    }
+                };
+            }
+            case 3: {
+                final Expr operand = number(depth - 1);
+                return new Expr("-(" + operand.source + ")", operand.type) {
+                    @Override
+                    int intValue(ArticleRow row) {
+                        return -operand.intValue(row);
+                    }
+
+                    @Override
+                    double doubleValue(ArticleRow row) {
+                        return type == RuleParser.INT ? intValue(row) : -operand.doubleValue(row);
+                    }
+                };
+            }
+            case 4:
+            case 5:
+            case 6:
+                return arithmetic(number(depth - 1), number(depth - 1));
+            default:
+                return call(number(depth - 1), number(depth - 1));
+        }
+    }
+
+    private Expr arithmetic(final Expr left, final Expr right) {
+        final char op = "+-*/".charAt(random.nextInt(4));
+        int type = left.type == RuleParser.INT && right.type == RuleParser.INT && op != '/'
+            ? RuleParser.INT : RuleParser.DOUBLE;
+        return new Expr("(" + left.source + " " + op + " " + right.source + ")", type) {
+            @Override
+            int intValue(ArticleRow row) {
+                int a = left.intValue(row);
+                int b = right.intValue(row);
+                return op == '+' ? a + b : op == '-' ? a - b : a * b;
+            }
+
+            @Override
+            double doubleValue(ArticleRow row) {
+                if (type == RuleParser.INT) return intValue(row);
+                double a = left.doubleValue(row);
+                double b = right.doubleValue(row);
+                switch (op) {
+                    case '+': return a + b;
+                    case '-': return a - b;
+                    case '*': return a * b;
+                    default: return a / b;
+                }
+            }
+        };
+    }
+
+    private Expr call(final Expr left, final Expr right) {
+        final String name = new String[] { "min", "max", "wilson" }[random.nextInt(3)];
+        int type = !"wilson".equals(name) && left.type == RuleParser.INT && right.type == RuleParser.INT
+            ? RuleParser.INT : RuleParser.DOUBLE;
+        return new Expr(name + "(" + left.source + ", " + right.source + ")", type) {
+            @Override
+            int intValue(ArticleRow row) {
+                int a = left.intValue(row);
+                int b = right.intValue(row);
+                return "min".equals(name) ? Math.min(a, b) : Math.max(a, b);
+            }
+
+            @Override
+            double doubleValue(ArticleRow row) {
+                if (type == RuleParser.INT) return intValue(row);
+                double a = left.doubleValue(row);
+                double b = right.doubleValue(row);
+                switch (name) {
+                    case "min": return Math.min(a, b);
+                    case "max": return Math.max(a, b);
+                    default: return RuleParser.wilson(a, b);
+                }
+            }
+        };
+    }
+
+    private static String literal(double value) {
+        if (value == (int) value) return Integer.toString((int) value);
+        return Double.toString(value);
+    }
+
+    private ArticleRow randomRow() {
+        ArticleRow row = new ArticleRow();
+        row.reset();
+        row.commentCount = random.nextInt(40) - 5;
+        row.worthy = random.nextInt(100);
+        row.unworthy = random.nextInt(30);
+        row.channelId = Arrays.asList(0, 1, 3, 5, 80).get(random.nextInt(5));
+        row.priceCents = random.nextInt(4) == 0 ? -1 : random.nextInt(500_000);
+        row.discountTenths = random.nextInt(3) == 0 ? -1 : 1 + random.nextInt(99);
+        row.historicalLow = random.nextBoolean();
+        return row;
+    }
+}
@@ -0,0 +1,203 @@
+package com.killbus.smzdmenhancer;
+
+import com.killbus.smzdmenhancer.utils.Metrics;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+
+import static org.junit.Assert.*;
+
+public class SeenArticleStoreTest {
+    private File dir;
+
+    @Before
+    public void setUp() throws Exception {
+        dir = Files.createTempDirectory("seen").toFile();
+        Metrics.reset();
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        dir.delete();
+    }
+
+    @Test
+    public void trimSkipsCompactionForFewPendingIds() throws Exception {
+        SeenArticleStore store = new SeenArticleStore(dir);
+        int few = Config.SEEN_STORE_TRIM_MIN_PENDING - 1;
+        for (long id = 1; id <= few; id++) {
+            store.markSeen(id);
+        }
+        store.trimTo(0);
+        // The writer runs in order: a compaction queued by the trim would truncate
+        // the log before this append lands, so a full log means none was queued
+        store.markSeen(few + 1);
+        waitForLogLength((few + 1) * 8L);
+        assertEquals(0, Metrics.counter("seen.compactions"));
+
+        long total = few + 1 + Config.SEEN_STORE_TRIM_MIN_PENDING;
+        for (long id = few + 2; id <= total; id++) {
+            store.markSeen(id);
+        }
+        store.trimTo(0);
+        waitForIndexed(total);
+
+        assertEquals(1, Metrics.counter("seen.compactions"));
+        assertEquals(total, store.size());
+        for (long id = 1; id <= total; id++) {
+            assertTrue(store.contains(id));
+        }
+    }
+
+    @Test
+    public void idsSurviveCloseAndReopen() throws Exception {
+        SeenArticleStore store = new SeenArticleStore(dir);
+        store.load();
+        store.markSeen(11);
+        store.markSeen(22);
+        store.close();
+
+        SeenArticleStore reopened = new SeenArticleStore(dir);
+        reopened.load();
+        assertTrue(reopened.contains(11));
+        assertTrue(reopened.contains(22));
+        assertFalse(reopened.contains(33));
+        assertEquals(2, reopened.size());
+        reopened.close();
+    }
+
+    @Test
+    public void replaysLogLeftWithoutCompaction() throws Exception {
+        // A process that dies before compacting leaves only the log behind
+        writeLog(5, 6, 7);
+        assertFalse(new File(dir, "seen.idx").exists());
+
+        SeenArticleStore store = new SeenArticleStore(dir);
+        store.load();
+        assertTrue(store.contains(5));
+        assertTrue(store.contains(6));
+        assertTrue(store.contains(7));
+        assertEquals(3, store.size());
+        assertEquals(0, Metrics.counter("seen.errors"));
+        store.close();
+    }
+
+    @Test
+    public void compactionMergesLogIntoIndex() throws Exception {
+        SeenArticleStore first = new SeenArticleStore(dir);
+        first.load();
+        first.markSeen(1);
+        first.markSeen(2);
+        first.close();
+        // Loading replays the log into a fresh index
+        SeenArticleStore compacted = new SeenArticleStore(dir);
+        compacted.load();
+        compacted.close();
+        assertEquals(0, new File(dir, "seen.log").length());
+
+        writeLog(3, 4);
+        SeenArticleStore store = new SeenArticleStore(dir);
+        store.load();
+
+        assertEquals(0, new File(dir, "seen.log").length());
+        assertEquals(4L, toLong(Metrics.gaugeValue("seen.indexed")).longValue());
+        assertEquals(4, store.size());
+        for (long id = 1; id <= 4; id++) {
+            assertTrue(store.contains(id));
+        }
+        store.close();
+    }
+
+    @Test
+    public void ignoresTruncatedLogTail() throws Exception {
+        writeLog(8, 9);
+        // A crash in the middle of an append leaves part of an ID
+        try (FileOutputStream out = new FileOutputStream(new File(dir, "seen.log"), true)) {
+            out.write(new byte[]{0, 0, 0, 0, 1});
+        }
+
+        SeenArticleStore store = new SeenArticleStore(dir);
+        store.load();
+        assertTrue(store.contains(8));
+        assertTrue(store.contains(9));
+        assertEquals(2, store.size());
+        assertEquals(0, Metrics.counter("seen.errors"));
+        store.close();
+    }
+
+    @Test
+    public void rejectsIndexWithoutEmptySlot() throws Exception {
+        writeIndex(4, 4, 1, 2, 3, 4);
+        SeenArticleStore store = new SeenArticleStore(dir);
+        store.load();
+        assertFalse(store.contains(1));
+        assertEquals(1, Metrics.counter("seen.errors"));
+        store.close();
+    }
+
+    @Test
+    public void probeEndsOnFullTableWithWrongCount() throws Exception {
+        // The header claims free slots, but every slot is taken
+        writeIndex(4, 1, 1, 2, 3, 4);
+        SeenArticleStore store = new SeenArticleStore(dir);
+        store.load();
+        assertTrue(store.contains(3));
+        assertFalse(store.contains(5));
+        store.close();
+    }
+
+    private void writeLog(long... ids) throws Exception {
+        ByteBuffer buffer = ByteBuffer.allocate(ids.length * 8);
+        for (long id : ids) {
+            buffer.putLong(id);
+        }
+        try (FileOutputStream out = new FileOutputStream(new File(dir, "seen.log"), true)) {
+            out.write(buffer.array());
+        }
+    }
+
+    private void writeIndex(int capacity, int count, long... slots) throws Exception {
+        ByteBuffer buffer = ByteBuffer.allocate(16 + capacity * 8);
+        buffer.putInt(0x53454e31).putInt(capacity).putInt(count).putInt(0);
+        for (long slot : slots) {
+            buffer.putLong(slot);
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(new File(dir, "seen.idx"), "rw")) {
+            raf.write(buffer.array());
+        }
+    }
+
+    private void waitForLogLength(long length) throws InterruptedException {
+        File log = new File(dir, "seen.log");
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (log.length() != length) {
+            assertTrue("Log has " + log.length() + " bytes", System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+    }
+
+    private static void waitForIndexed(long count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!Long.valueOf(count).equals(toLong(Metrics.gaugeValue("seen.indexed")))) {
+            assertTrue("Compaction did not finish", System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+    }
+
+    private static Long toLong(Object value) {
+        return value instanceof Number ? ((Number) value).longValue() : null;
+    }
+}
@@ -0,0 +1,90 @@
+package com.killbus.smzdmenhancer;
+
+import com.killbus.smzdmenhancer.utils.Tracer;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.StringWriter;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/**
+ * Replays a synthetic /home/list page through the filter with tracing on
+ * and checks the dumped Chrome trace
+ */
+public class TracerReplayTest {
+    private boolean savedTrace;
+
+    @Before
+    public void setUp() {
+        Config.DEBUG_MODE = false;
+        Config.ENABLE_LOGGING = false;
+        savedTrace = Config.TRACE_ENABLED;
+        Tracer.clear();
+    }
+
+    @After
+    public void tearDown() {
+        Config.TRACE_ENABLED = savedTrace;
+        Tracer.clear();
+    }
+
+    @Test
+    public void disabledTracingRecordsNothing() {
+        Config.TRACE_ENABLED = false;
+        long span = Tracer.begin();
+        assertEquals(0, span);
+        Tracer.end("test.disabled", span);
+        assertEquals(0, Tracer.size());
+    }
+
+    @Test
+    public void replayRecordsEachFilterStage() throws Exception {
+        String page = Payloads.string(Payloads.SYNTHETIC_HOME_LIST_PAGE);
+        Config.TRACE_ENABLED = true;
+
+        FilterStats stats = new FilterStats();
+        stats.quiet = true;
+        String filtered = ArticleFilter.filterJsonResponse(page, stats);
+        assertNotNull(filtered);
+        assertTrue(stats.dropped > 0);
+
+        JSONArray events = dump().getJSONArray("traceEvents");
+        Set<String> names = new HashSet<>();
+        for (int i = 0; i < events.length(); i++) {
+            JSONObject event = events.getJSONObject(i);
+            names.add(event.optString("name"));
+            assertEquals("X", event.optString("ph"));
+            assertTrue(event.has("ts"));
+            assertTrue(event.has("dur"));
+        }
+        assertTrue(names.contains("filter.parse"));
+        assertTrue(names.contains("filter.rules"));
+        assertTrue(names.contains("filter.serialize"));
+    }
+
+    @Test
+    public void ringKeepsTheNewestSpans() throws Exception {
+        Config.TRACE_ENABLED = true;
+        for (int i = 0; i < Config.TRACE_RING_SIZE * 2; i++) {
+            Tracer.end(i < Config.TRACE_RING_SIZE ? "old" : "new", Tracer.begin());
+        }
+        JSONArray events = dump().getJSONArray("traceEvents");
+        assertEquals(Tracer.size(), events.length());
+        for (int i = 0; i < events.length(); i++) {
+            assertEquals("new", events.getJSONObject(i).optString("name"));
+        }
+    }
+
+    private static JSONObject dump() throws Exception {
+        StringWriter out = new StringWriter();
+        Tracer.writeChromeTrace(out);
+        return new JSONObject(out.toString());
+    }
+}
@@ -0,0 +1,156 @@
+package com.killbus.smzdmenhancer.utils;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class MemoryGovernorTest {
+    private static final long BUDGET = 1000;
+
+    private final List<String> trims = new ArrayList<>();
+    private MemoryGovernor governor;
+    private FakeConsumer memo;
+    private FakeConsumer dedup;
+    private FakeConsumer seen;
+
+    @Before
+    public void setUp() {
+        governor = new MemoryGovernor(BUDGET);
+        memo = new FakeConsumer("memo", 400, 0);
+        dedup = new FakeConsumer("dedup", 300, 0);
+        seen = new FakeConsumer("seen", 200, 0);
+        // Registered out of order; trimming follows priority
+        governor.register(seen, 20);
+        governor.register(memo, 0);
+        governor.register(dedup, 10);
+        governor.register(memo, 0);
+    }
+
+    @Test
+    public void targetsPerTrimLevel() {
+        assertEquals(BUDGET / 2, governor.targetFor(MemoryGovernor.TRIM_MEMORY_RUNNING_MODERATE));
+        assertEquals(BUDGET / 4, governor.targetFor(MemoryGovernor.TRIM_MEMORY_RUNNING_LOW));
+        assertEquals(0, governor.targetFor(MemoryGovernor.TRIM_MEMORY_RUNNING_CRITICAL));
+        assertEquals(BUDGET / 2, governor.targetFor(MemoryGovernor.TRIM_MEMORY_UI_HIDDEN));
+        assertEquals(BUDGET / 4, governor.targetFor(MemoryGovernor.TRIM_MEMORY_BACKGROUND));
+        assertEquals(0, governor.targetFor(MemoryGovernor.TRIM_MEMORY_MODERATE));
+        assertEquals(0, governor.targetFor(MemoryGovernor.TRIM_MEMORY_COMPLETE));
+    }
+
+    @Test
+    public void underBudgetTrimsNothing() {
+        assertEquals(900, governor.enforce());
+        assertTrue(trims.isEmpty());
+    }
+
+    @Test
+    public void overBudgetTrimsCheapestFirst() {
+        memo.bytes = 600;
+        assertEquals(BUDGET, governor.enforce());
+        assertEquals(Arrays.asList("memo:500"), trims);
+    }
+
+    @Test
+    public void runningModerateTrimsOnlyTheFirstConsumer() {
+        governor.onTrimMemory(MemoryGovernor.TRIM_MEMORY_RUNNING_MODERATE);
+        assertEquals(Arrays.asList("memo:0"), trims);
+        assertEquals(300, dedup.bytes);
+        assertEquals(200, seen.bytes);
+    }
+
+    @Test
+    public void uiHiddenTrimsLikeRunningModerate() {
+        governor.onTrimMemory(MemoryGovernor.TRIM_MEMORY_UI_HIDDEN);
+        assertEquals(Arrays.asList("memo:0"), trims);
+    }
+
+    @Test
+    public void runningLowTrimsIntoTheSecondConsumer() {
+        governor.onTrimMemory(MemoryGovernor.TRIM_MEMORY_RUNNING_LOW);
+        assertEquals(Arrays.asList("memo:0", "dedup:50"), trims);
+        assertEquals(BUDGET / 4, governor.totalBytes());
+    }
+
+    @Test
+    public void backgroundTrimsLikeRunningLow() {
+        governor.onTrimMemory(MemoryGovernor.TRIM_MEMORY_BACKGROUND);
+        assertEquals(Arrays.asList("memo:0", "dedup:50"), trims);
+    }
+
+    @Test
+    public void criticalLevelsReleaseEverythingInOrder() {
+        int[] levels = {
+            MemoryGovernor.TRIM_MEMORY_RUNNING_CRITICAL,
+            MemoryGovernor.TRIM_MEMORY_MODERATE,
+            MemoryGovernor.TRIM_MEMORY_COMPLETE,
+        };
+        for (int level : levels) {
+            setUp();
+            trims.clear();
+            governor.onTrimMemory(level);
+            assertEquals(Arrays.asList("memo:0", "dedup:0", "seen:0"), trims);
+            assertEquals(0, governor.totalBytes());
+        }
+    }
+
+    @Test
+    public void shortfallMovesToTheNextConsumer() {
+        // The memo cannot go below 150 bytes, so dedup makes up the difference
+        memo.floor = 150;
+        governor.onTrimMemory(MemoryGovernor.TRIM_MEMORY_RUNNING_MODERATE);
+        assertEquals(Arrays.asList("memo:0", "dedup:150"), trims);
+        assertEquals(150, memo.bytes);
+        assertEquals(BUDGET / 2, governor.totalBytes());
+    }
+
+    @Test
+    public void emptyConsumersAreSkipped() {
+        memo.bytes = 0;
+        governor.onLowMemory();
+        assertEquals(Arrays.asList("dedup:0", "seen:0"), trims);
+    }
+
+    @Test
+    public void totalPublishesAGaugePerConsumer() {
+        Metrics.reset();
+        memo.bytes = 123;
+        assertEquals(623, governor.totalBytes());
+        assertEquals(123L, Metrics.gaugeValue("memory.memo_bytes"));
+        assertEquals(300L, Metrics.gaugeValue("memory.dedup_bytes"));
+        assertEquals(200L, Metrics.gaugeValue("memory.seen_bytes"));
+        assertEquals(623L, Metrics.gaugeValue("memory.total_bytes"));
+    }
+
+    private final class FakeConsumer implements MemoryGovernor.Consumer {
+        final String name;
+        long bytes;
+        long floor;
+
+        FakeConsumer(String name, long bytes, long floor) {
+            this.name = name;
+            this.bytes = bytes;
+            this.floor = floor;
+        }
+
+        @Override
+        public String name() {
+            return name;
+        }
+
+        @Override
+        public long estimatedBytes() {
+            return bytes;
+        }
+
+        @Override
+        public void trimTo(long maxBytes) {
+            trims.add(name + ":" + maxBytes);
+            bytes = Math.max(floor, Math.min(bytes, maxBytes));
+        }
+    }
+}